@@ -1,12 +1,13 @@
 package imd.ufrn.br.app;
 
+import imd.ufrn.br.annotations.Cacheable;
 import imd.ufrn.br.annotations.HttpVerb;
 import imd.ufrn.br.annotations.MethodMapping;
 import imd.ufrn.br.annotations.RequestMapping;
 
 import java.time.LocalDateTime;
-import java.util.Arrays;
 import java.util.List;
+import java.util.stream.IntStream;
 
 @RequestMapping(path = "/calculator")
 public class CalculatorServiceImpl {
@@ -37,6 +38,7 @@ public class CalculatorServiceImpl {
     }
 
     @MethodMapping(path = "/status", verb = HttpVerb.GET)
+    @Cacheable(ttlMs = 1000)
     public String getStatus() {
         return "CalculatorService is UP and running at " + LocalDateTime.now();
     }
@@ -50,11 +52,11 @@ public class CalculatorServiceImpl {
     }
 
     @MethodMapping(path = "/sum", verb = HttpVerb.POST)
-    public int sumArray(int[] numbers) {
+    public int sumArray(IntStream numbers) {
         if (numbers == null) {
             return 0;
         }
-        return Arrays.stream(numbers).sum();
+        return numbers.sum();
     }
 
     @MethodMapping(path = "/error", verb = HttpVerb.POST)
@@ -0,0 +1,184 @@
+package imd.ufrn.br.app;
+
+import imd.ufrn.br.MiddlewarePlatform;
+import imd.ufrn.br.annotations.HttpVerb;
+import imd.ufrn.br.annotations.MethodMapping;
+import imd.ufrn.br.annotations.RequestMapping;
+import imd.ufrn.br.client.HttpServiceClient;
+import imd.ufrn.br.client.LoadBalancer;
+import imd.ufrn.br.extensions.Extension;
+import imd.ufrn.br.monitoring.HeartbeatMonitor;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares client-side load balancing on three middleware instances started in this JVM. Each instance
+ * serves at most {@link #NODE_CAPACITY} calls at a time, taking {@link #SERVICE_TIME_MS} per call,
+ * except the last one, which is degraded and takes {@link #SLOW_SERVICE_TIME_MS}, as if it were pausing
+ * for GC or sharing its host with a noisy neighbour. Service times are slept rather than computed, so
+ * queueing on the instances, not the CPU of this machine, decides the latencies. Prints the latency
+ * percentiles of round-robin and of the least-loaded balancer, then stops one instance to show it
+ * being ejected.
+ * <p>
+ * {@code java -cp target/aplicacao-1.0-SNAPSHOT.jar imd.ufrn.br.app.LoadBalancingDemo [--gateway.engine=...]}
+ */
+public class LoadBalancingDemo {
+
+    private static final int[] PORTS = {8091, 8092, 8093};
+    private static final int NODE_CAPACITY = 4;
+    private static final long SERVICE_TIME_MS = 2;
+    private static final long SLOW_SERVICE_TIME_MS = 20;
+    private static final int THREADS = 16;
+    private static final int CALLS_PER_THREAD = 500;
+
+    @RequestMapping(path = "/calculator")
+    public interface Calculadora {
+        @MethodMapping(path = "/add", verb = HttpVerb.POST)
+        int add(int a, int b);
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<MiddlewarePlatform> platforms = new ArrayList<>();
+        List<URI> endpoints = new ArrayList<>();
+        for (int port : PORTS) {
+            String[] platformArgs = Arrays.copyOf(args, args.length + 1);
+            platformArgs[args.length] = "--server.http.port=" + port;
+            MiddlewarePlatform platform = new MiddlewarePlatform();
+            platform.start(platformArgs);
+            platforms.add(platform);
+            endpoints.add(URI.create("http://localhost:" + port));
+        }
+        // The route registry is shared by every platform of the JVM, so one registration serves all three
+        platforms.get(0).registerService(new CalculatorServiceImpl());
+        for (int i = 0; i < platforms.size(); i++) {
+            platforms.get(i).registerExtension(new CapacityLimit(i == platforms.size() - 1 ? SLOW_SERVICE_TIME_MS : SERVICE_TIME_MS));
+        }
+
+        System.out.println();
+        System.out.println("Instâncias atendem " + NODE_CAPACITY + " chamadas por vez em " + SERVICE_TIME_MS + "ms cada, "
+                + endpoints.get(PORTS.length - 1) + " em " + SLOW_SERVICE_TIME_MS + "ms; " + THREADS + " threads, "
+                + CALLS_PER_THREAD + " chamadas cada");
+        for (LoadBalancer.Strategy strategy : List.of(LoadBalancer.Strategy.ROUND_ROBIN, LoadBalancer.Strategy.LEAST_LOADED)) {
+            LoadBalancer balancer = new LoadBalancer(endpoints, strategy, 10000, 3, 5000);
+            Calculadora calculadora = new HttpServiceClient(balancer, Duration.ofSeconds(5), Duration.ofSeconds(30))
+                    .proxy(Calculadora.class);
+            run(calculadora, 50);
+            long[] before = requestsOf(balancer);
+            long[] latencies = run(calculadora, CALLS_PER_THREAD);
+            System.out.printf("%-12s p50=%.1fms p90=%.1fms p99=%.1fms p99.9=%.1fms max=%.1fms  chamadas por instância: %s%n",
+                    strategy, percentile(latencies, 50), percentile(latencies, 90), percentile(latencies, 99),
+                    percentile(latencies, 99.9), latencies[latencies.length - 1] / 1e6,
+                    Arrays.toString(minus(requestsOf(balancer), before)));
+        }
+
+        LoadBalancer balancer = new LoadBalancer(endpoints);
+        List<HeartbeatMonitor> monitors = new ArrayList<>();
+        for (int i = 0; i < PORTS.length; i++) {
+            HeartbeatMonitor monitor = new HeartbeatMonitor(500, 500, 2);
+            monitor.setEndpoint("localhost", PORTS[i]);
+            monitor.registerService("calculator", "/health/calculator");
+            monitor.start();
+            balancer.useHealth(endpoints.get(i), monitor);
+            monitors.add(monitor);
+        }
+        Calculadora calculadora = new HttpServiceClient(balancer, Duration.ofSeconds(1), Duration.ofSeconds(5))
+                .proxy(Calculadora.class);
+        platforms.get(1).stop();
+        System.out.println("Instância em " + endpoints.get(1) + " parada");
+        long[] before = requestsOf(balancer);
+        AtomicInteger failures = new AtomicInteger();
+        for (int i = 0; i < 200; i++) {
+            try {
+                calculadora.add(i, 1);
+            } catch (RuntimeException e) {
+                failures.incrementAndGet();
+            }
+        }
+        System.out.println("200 chamadas: " + failures.get() + " falhas, " + endpoints.get(1) + " ejetada: "
+                + balancer.endpoints().get(1).isEjected() + ", chamadas por instância: "
+                + Arrays.toString(minus(requestsOf(balancer), before)));
+        Thread.sleep(1500);
+        System.out.println("Saúde segundo o HeartbeatMonitor: " + monitors.get(1).getHealthStatus());
+
+        for (HeartbeatMonitor monitor : monitors) {
+            monitor.stop();
+        }
+        for (MiddlewarePlatform platform : platforms) {
+            platform.stop();
+        }
+        System.exit(0);
+    }
+
+    /**
+     * Holds each call for the service time of its instance, {@link #NODE_CAPACITY} calls at a time.
+     */
+    private static final class CapacityLimit implements Extension {
+        private final Semaphore workers = new Semaphore(NODE_CAPACITY, true);
+        private final long serviceTimeMs;
+
+        CapacityLimit(long serviceTimeMs) {
+            this.serviceTimeMs = serviceTimeMs;
+        }
+
+        @Override
+        public void onInvoke(String objectId, String methodName) {
+            try {
+                workers.acquire();
+                try {
+                    Thread.sleep(serviceTimeMs);
+                } finally {
+                    workers.release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Runs {@link #THREADS} callers in a closed loop and returns the sorted latencies in nanoseconds.
+     */
+    private static long[] run(Calculadora calculadora, int callsPerThread) throws InterruptedException {
+        long[] latencies = new long[THREADS * callsPerThread];
+        Thread[] threads = new Thread[THREADS];
+        for (int t = 0; t < THREADS; t++) {
+            int offset = t * callsPerThread;
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < callsPerThread; i++) {
+                    long start = System.nanoTime();
+                    calculadora.add(i, 1);
+                    latencies[offset + i] = System.nanoTime() - start;
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private static long[] requestsOf(LoadBalancer balancer) {
+        return balancer.endpoints().stream().mapToLong(LoadBalancer.Endpoint::requests).toArray();
+    }
+
+    private static long[] minus(long[] after, long[] before) {
+        long[] delta = new long[after.length];
+        for (int i = 0; i < delta.length; i++) {
+            delta[i] = after[i] - before[i];
+        }
+        return delta;
+    }
+}
@@ -1,34 +1,63 @@
 package imd.ufrn.br;
 
+import imd.ufrn.br.annotations.Bulkhead;
+import imd.ufrn.br.annotations.HttpVerb;
 import imd.ufrn.br.annotations.RequestMapping;
 import imd.ufrn.br.broker.Broker;
+import imd.ufrn.br.broker.LocalProxy;
+import imd.ufrn.br.broker.LocalRoute;
 import imd.ufrn.br.config.MiddlewareConfig;
+import imd.ufrn.br.exceptions.ObjectNotFoundException;
 import imd.ufrn.br.extensions.Extension;
 import imd.ufrn.br.extensions.ExtensionManager;
+import imd.ufrn.br.gateway.AdmissionController;
+import imd.ufrn.br.gateway.BinaryRpcTransport;
+import imd.ufrn.br.gateway.GatewayDispatcher;
+import imd.ufrn.br.gateway.GatewayEngine;
 import imd.ufrn.br.gateway.HTTPGateway;
+import imd.ufrn.br.gateway.NioHttpGateway;
+import imd.ufrn.br.gateway.ResponseCache;
+import imd.ufrn.br.gateway.ResponseCompressor;
+import imd.ufrn.br.gateway.SharedMemoryTransport;
+import imd.ufrn.br.gateway.UdpTransport;
 import imd.ufrn.br.infra.MetricsCollector;
 import imd.ufrn.br.infra.MetricsExporter;
+import imd.ufrn.br.infra.VirtualThreads;
 import imd.ufrn.br.lifecycle.Lifecycle;
 import imd.ufrn.br.lifecycle.LifecycleManager;
 import imd.ufrn.br.monitoring.HeartbeatMonitor;
+import imd.ufrn.br.monitoring.PinningMonitor;
+import imd.ufrn.br.registry.RouteInfo;
+import imd.ufrn.br.registry.RouteMatch;
 import imd.ufrn.br.registry.RouteRegistry;
 import imd.ufrn.br.remoting.AsyncInvoker;
 import imd.ufrn.br.remoting.Invoker;
+import imd.ufrn.br.remoting.Marshaller;
+import imd.ufrn.br.remoting.MarshallerRegistry;
+import imd.ufrn.br.remoting.MethodHandleInvoker;
 
 import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.file.Path;
 import java.util.concurrent.CountDownLatch;
 
 public class MiddlewarePlatform {
 
     private MiddlewareConfig config;
     private ExtensionManager extensionManager;
-    private HTTPGateway httpGateway;
+    private GatewayEngine httpGateway;
+    private BinaryRpcTransport rpcTransport;
+    private BinaryRpcTransport udsTransport;
+    private UdpTransport udpTransport;
+    private SharedMemoryTransport shmTransport;
     private MetricsExporter metricsExporter;
     private RouteRegistry routeRegistry;
     private LifecycleManager lifecycleManager;
     private HeartbeatMonitor heartbeatMonitor;
+    private PinningMonitor pinningMonitor;
     private Broker broker;
     private AsyncInvoker asyncInvoker;
+    private ResponseCache responseCache;
 
     private boolean isRunning = false;
     private final CountDownLatch shutdownLatch = new CountDownLatch(1);
@@ -49,6 +78,9 @@ public class MiddlewarePlatform {
 
         System.out.println("Configuração carregada:");
         System.out.println("  Porta HTTP: " + config.getHttpPort());
+        System.out.println("  Engine do gateway: " + config.getGatewayEngine());
+        System.out.println("  Threads: " + (config.isVirtualThreadsEnabled() ? "virtuais" : "de plataforma"));
+        System.out.println("  Estratégia de invocação: " + config.getInvokerStrategy());
         System.out.println("  Modo assíncrono: " + (config.isAsyncEnabled() ? "habilitado" : "desabilitado"));
         System.out.println("  Métricas: " + (config.isMetricsEnabled() ? "habilitadas" : "desabilitadas"));
 
@@ -59,18 +91,23 @@ public class MiddlewarePlatform {
         heartbeatMonitor = new HeartbeatMonitor(5000, 2000, 3);
         heartbeatMonitor.setEndpoint(config.getServerHost(), config.getHttpPort());
 
-        Invoker invoker = new Invoker();
+        Invoker invoker = "reflection".equalsIgnoreCase(config.getInvokerStrategy())
+                ? new Invoker()
+                : new MethodHandleInvoker();
         
-        if (config.isAsyncEnabled()) {
-            asyncInvoker = new AsyncInvoker(config.getAsyncPoolSize());
-        }
-
         MetricsCollector metricsCollector = null;
         if (config.isMetricsEnabled()) {
             metricsCollector = new MetricsCollector();
             if (config.isMetricsExportEnabled()) {
                 metricsExporter = new MetricsExporter(metricsCollector);
             }
+            if (config.isVirtualThreadsEnabled() && VirtualThreads.isSupported()) {
+                pinningMonitor = new PinningMonitor(metricsCollector, config.getPinningThresholdMs());
+            }
+        }
+
+        if (config.isAsyncEnabled()) {
+            asyncInvoker = new AsyncInvoker(invoker, config.getAsyncPoolSize(), config.isVirtualThreadsEnabled(), metricsCollector);
         }
 
         if (config.isAsyncEnabled() && asyncInvoker != null) {
@@ -78,11 +115,77 @@ public class MiddlewarePlatform {
         } else {
             broker = new Broker(invoker, extensionManager, metricsCollector);
         }
+        if (config.isConcurrencyLimiterEnabled()) {
+            broker.enableConcurrencyLimit(config.getLimiterInitial(), config.getLimiterMin(), config.getLimiterMax());
+            System.out.println("  Limite de concorrência adaptativo: " + config.getLimiterMin() + ".." + config.getLimiterMax()
+                    + " (inicial " + config.getLimiterInitial() + ")");
+        }
         
-        httpGateway = new HTTPGateway(routeRegistry, broker);
+        AdmissionController admissionController = null;
+        if (config.getAdmissionMaxInFlight() > 0) {
+            admissionController = new AdmissionController(config.getAdmissionMaxInFlight(), config.getAdmissionMaxQueued(),
+                    config.getAdmissionQueueTimeoutMs(), config.getAdmissionRetryAfterSeconds(),
+                    config.isVirtualThreadsEnabled(), metricsCollector);
+            System.out.println("  Controle de admissão: " + config.getAdmissionMaxInFlight() + " em execução, fila de "
+                    + config.getAdmissionMaxQueued() + " (" + config.getAdmissionQueueTimeoutMs() + "ms)");
+        }
 
-        if (httpGateway instanceof Lifecycle) {
-            lifecycleManager.register((Lifecycle) httpGateway);
+        responseCache = new ResponseCache(config.getCacheMaxBytes(), metricsCollector);
+        GatewayDispatcher dispatcher = new GatewayDispatcher(routeRegistry, broker, admissionController, responseCache);
+        if (config.getBatchMaxCalls() > 0) {
+            dispatcher.enableBatch(config.getBatchMaxCalls(), config.getBatchParallelism(), config.isVirtualThreadsEnabled());
+        }
+        if (config.isCompressionEnabled()) {
+            dispatcher.enableCompression(new ResponseCompressor(config.getCompressionMinBytes(), config.getCompressionLevel(),
+                    metricsCollector));
+            System.out.println("  Compressão gzip/deflate: a partir de " + config.getCompressionMinBytes() + " bytes");
+        }
+        StringBuilder formats = new StringBuilder("application/json");
+        for (String name : config.getMarshallers().split(",")) {
+            if (name.isBlank() || name.trim().equalsIgnoreCase("json")) {
+                continue;
+            }
+            Marshaller marshaller = MarshallerRegistry.create(name);
+            if (marshaller == null) {
+                continue;
+            }
+            dispatcher.registerMarshaller(marshaller);
+            formats.append(", ").append(marshaller.mediaType());
+        }
+        System.out.println("  Formatos: " + formats);
+
+        if ("nio".equalsIgnoreCase(config.getGatewayEngine())) {
+            NioHttpGateway nioGateway = new NioHttpGateway(dispatcher, config.getNioEventLoops(),
+                    config.getNioWorkerThreads(), config.getNioIdleTimeoutMs(), config.getNioMaxRequestBytes(),
+                    config.isVirtualThreadsEnabled());
+            if (!config.getWebSocketPath().isEmpty()) {
+                nioGateway.enableWebSocket(config.getWebSocketPath());
+            }
+            httpGateway = nioGateway;
+        } else {
+            httpGateway = new HTTPGateway(dispatcher, config.isVirtualThreadsEnabled());
+        }
+
+        lifecycleManager.register(httpGateway);
+        if (config.isTcpEnabled()) {
+            rpcTransport = new BinaryRpcTransport(dispatcher, config.getNioEventLoops(), config.getTcpThreadPoolSize(),
+                    config.getNioIdleTimeoutMs(), config.getTcpMaxFrameBytes(), config.isVirtualThreadsEnabled());
+            lifecycleManager.register(rpcTransport);
+        }
+        if (!config.getUdsPath().isEmpty()) {
+            udsTransport = new BinaryRpcTransport(dispatcher, config.getNioEventLoops(), config.getTcpThreadPoolSize(),
+                    config.getNioIdleTimeoutMs(), config.getTcpMaxFrameBytes(), config.isVirtualThreadsEnabled());
+            lifecycleManager.register(udsTransport);
+        }
+        if (config.isUdpEnabled()) {
+            udpTransport = new UdpTransport(dispatcher, config.getUdpThreadPoolSize(), config.getUdpQueueCapacity(),
+                    metricsCollector);
+            lifecycleManager.register(udpTransport);
+        }
+        if (!config.getShmFile().isEmpty()) {
+            shmTransport = new SharedMemoryTransport(dispatcher, config.getShmChannels(), config.getShmRingBytes(),
+                    config.getTcpThreadPoolSize(), config.isVirtualThreadsEnabled());
+            lifecycleManager.register(shmTransport);
         }
         if (heartbeatMonitor instanceof Lifecycle) {
             lifecycleManager.register((Lifecycle) heartbeatMonitor);
@@ -90,9 +193,31 @@ public class MiddlewarePlatform {
         if (metricsExporter instanceof Lifecycle) {
             lifecycleManager.register((Lifecycle) metricsExporter);
         }
+        if (pinningMonitor != null) {
+            lifecycleManager.register(pinningMonitor);
+        }
 
         httpGateway.start(config.getHttpPort());
         System.out.println("Gateway HTTP iniciado na porta " + config.getHttpPort());
+        if (httpGateway instanceof NioHttpGateway && !config.getWebSocketPath().isEmpty()) {
+            System.out.println("RPC via WebSocket em ws://localhost:" + config.getHttpPort() + config.getWebSocketPath());
+        }
+        if (rpcTransport != null) {
+            rpcTransport.start(config.getTcpPort());
+            System.out.println("Transporte RPC binário iniciado na porta TCP " + config.getTcpPort());
+        }
+        if (udsTransport != null) {
+            udsTransport.start(UnixDomainSocketAddress.of(config.getUdsPath()));
+            System.out.println("Transporte RPC binário iniciado no socket Unix " + config.getUdsPath());
+        }
+        if (udpTransport != null) {
+            udpTransport.start(config.getUdpPort());
+            System.out.println("Transporte UDP de mão única iniciado na porta " + config.getUdpPort());
+        }
+        if (shmTransport != null) {
+            shmTransport.start(Path.of(config.getShmFile()));
+            System.out.println("Transporte de memória compartilhada iniciado em " + config.getShmFile());
+        }
 
         if (metricsExporter != null) {
             try {
@@ -103,6 +228,14 @@ public class MiddlewarePlatform {
             }
         }
 
+        if (pinningMonitor != null) {
+            try {
+                pinningMonitor.start();
+            } catch (Exception e) {
+                System.err.println("Monitor de pinning indisponível: " + e.getMessage());
+            }
+        }
+
         try {
             heartbeatMonitor.start();
         } catch (Exception e) {
@@ -165,9 +298,34 @@ public class MiddlewarePlatform {
             lifecycleManager.register((Lifecycle) serviceInstance);
         }
         
+        configureBulkhead(serviceClass, serviceName);
+        
         System.out.println("Serviço '" + serviceName + "' registrado");
     }
 
+    /**
+     * Gives the service its own AsyncInvoker pool when it carries {@link Bulkhead} or has
+     * {@code bulkhead.<service>.threads} configured; the properties override the annotation.
+     */
+    private void configureBulkhead(Class<?> serviceClass, String serviceName) {
+        Bulkhead annotation = serviceClass.getAnnotation(Bulkhead.class);
+        String prefix = "bulkhead." + serviceName + ".";
+        String threads = config.getProperty(prefix + "threads", annotation != null ? String.valueOf(annotation.threads()) : null);
+        if (threads == null) {
+            return;
+        }
+        if (asyncInvoker == null) {
+            System.err.println("Aviso: Bulkhead de '" + serviceName + "' ignorado, o modo assíncrono está desabilitado.");
+            return;
+        }
+        String queue = config.getProperty(prefix + "queue", String.valueOf(annotation != null ? annotation.queue() : 64));
+        String rejection = config.getProperty(prefix + "rejection",
+                (annotation != null ? annotation.rejection() : Bulkhead.Rejection.ABORT).name());
+        asyncInvoker.addBulkhead(serviceClass, serviceName, Integer.parseInt(threads), Integer.parseInt(queue),
+                Bulkhead.Rejection.valueOf(rejection.toUpperCase()));
+        System.out.println("Bulkhead de '" + serviceName + "': " + threads + " threads, fila de " + queue + " (" + rejection + ")");
+    }
+
     public void registerExtension(Extension extension) {
         if (extensionManager != null) {
             extensionManager.addExtension(extension);
@@ -176,6 +334,70 @@ public class MiddlewarePlatform {
         }
     }
     
+    /**
+     * Typed client for services registered in this platform, calling them through the Broker without
+     * going through a gateway or marshalling anything; see {@link LocalProxy}. Arguments and results
+     * are copied when {@code local.copy.arguments} is set. Create it after registering the services
+     * it calls.
+     */
+    public <T> T localProxy(Class<T> serviceInterface) {
+        return localProxy(serviceInterface, config.isLocalCopyArguments());
+    }
+
+    /**
+     * @param copyArguments whether arguments and results are deep-copied, so that caller and service
+     *                      never share a mutable object
+     */
+    public <T> T localProxy(Class<T> serviceInterface, boolean copyArguments) {
+        return LocalProxy.create(serviceInterface, routeRegistry.getRoutes(), broker, copyArguments);
+    }
+
+    /**
+     * Handle for calling the route registered as {@code verb path} (the pattern, such as
+     * {@code /items/{id}}) from inside this JVM; see {@link LocalRoute}.
+     *
+     * @throws ObjectNotFoundException when no such route is registered
+     */
+    public LocalRoute localRoute(HttpVerb verb, String path) {
+        RouteInfo route = routeRegistry.getRoutes().get(verb.name() + " " + path);
+        if (route == null) {
+            throw new ObjectNotFoundException("No route registered for " + verb.name() + " " + path);
+        }
+        return new LocalRoute(broker, route, config.isLocalCopyArguments());
+    }
+
+    /**
+     * Drops cached responses for {@code path}. A route pattern such as {@code /items/{id}} clears the
+     * whole route; a concrete path such as {@code /items/42} clears only the entries for those path
+     * variable values.
+     *
+     * @return the number of entries removed
+     */
+    public int invalidateCache(String path) {
+        if (responseCache == null) {
+            return 0;
+        }
+        for (RouteInfo route : routeRegistry.getRoutes().values()) {
+            if (route.isCacheable() && route.path().equals(path)) {
+                return responseCache.invalidate(route, null);
+            }
+        }
+        RouteMatch match = routeRegistry.match(HttpVerb.GET, path);
+        if (match == null || !match.route().isCacheable()) {
+            return 0;
+        }
+        return responseCache.invalidate(match.route(), match.pathValues());
+    }
+
+    /**
+     * Drops every cached response.
+     *
+     * @return the number of entries removed
+     */
+    public int invalidateCache() {
+        return responseCache == null ? 0 : responseCache.invalidateAll();
+    }
+    
     public MiddlewareConfig getConfig() {
         return config;
     }
@@ -0,0 +1,26 @@
+package imd.ufrn.br.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Runs a service's asynchronous invocations on its own bounded pool instead of the shared
+ * AsyncInvoker pool, so a slow or stuck service cannot starve the others. Each value can be
+ * overridden with {@code bulkhead.<service>.threads}, {@code .queue} and {@code .rejection}.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface Bulkhead {
+    int threads();
+    int queue() default 64;
+    Rejection rejection() default Rejection.ABORT;
+
+    enum Rejection {
+        /** Fail the call right away; the gateway answers 503. */
+        ABORT,
+        /** Run the call on the submitting thread, slowing the caller down. */
+        CALLER_RUNS
+    }
+}
@@ -0,0 +1,18 @@
+package imd.ufrn.br.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Caches the serialized response of a GET route, keyed by its path variables and request body.
+ * Only successful responses are stored. Entries can be dropped early through
+ * {@code MiddlewarePlatform.invalidateCache}.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Cacheable {
+    /** Time to live in milliseconds; 0 keeps entries until they are evicted or invalidated. */
+    long ttlMs() default 60000;
+}
@@ -0,0 +1,16 @@
+package imd.ufrn.br.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Lets concurrent calls to this route with equal arguments share one invocation: the first call
+ * runs and every identical call arriving while it is in flight receives its result. Arguments are
+ * compared with {@code equals}, so parameter types without value equality never coalesce.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Coalesce {
+}
@@ -0,0 +1,17 @@
+package imd.ufrn.br.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a fire-and-forget route, such as telemetry ingestion or an invalidation notice, that may
+ * also be invoked through the UDP transport, where the caller gets no reply and its result is
+ * discarded. Over HTTP the route still answers as usual. Routes without it are never invoked from
+ * a datagram.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface OneWay {
+}
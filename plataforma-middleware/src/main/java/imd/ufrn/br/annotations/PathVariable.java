@@ -0,0 +1,16 @@
+package imd.ufrn.br.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Binds a method parameter to a {@code {name}} or {@code {*name}} segment of the route path instead of
+ * to the JSON body. Parameters without it are read from the body array, in order.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.PARAMETER)
+public @interface PathVariable {
+    String value();
+}
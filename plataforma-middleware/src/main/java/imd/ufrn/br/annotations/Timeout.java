@@ -0,0 +1,17 @@
+package imd.ufrn.br.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Bounds how long a method of an {@code HttpServiceClient} proxy waits for the response, overriding
+ * the client's request timeout. Ignored on services.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Timeout {
+    /** Time to wait for the response in milliseconds. */
+    long value();
+}
@@ -1,14 +1,22 @@
 package imd.ufrn.br.broker;
 
+import imd.ufrn.br.annotations.Coalesce;
 import imd.ufrn.br.remoting.Request;
 import imd.ufrn.br.remoting.Response;
 import imd.ufrn.br.remoting.Invoker;
 import imd.ufrn.br.remoting.AsyncInvoker;
+import imd.ufrn.br.remoting.ParameterBinder;
 import imd.ufrn.br.extensions.ExtensionManager;
 import imd.ufrn.br.infra.MetricsCollector;
 
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -20,6 +28,11 @@ public class Broker {
     private final MetricsCollector metricsCollector;
     private final boolean asyncMode;
     private final long asyncTimeout;
+    private final Map<Method, ConcurrencyLimiter> limiters = new ConcurrentHashMap<>();
+    private final Map<Method, Map<CallKey, CompletableFuture<Response>>> inFlightCalls = new ConcurrentHashMap<>();
+    private volatile int[] limiterBounds;
+
+    private static final Map<CallKey, CompletableFuture<Response>> NOT_COALESCED = Map.of();
 
     public Broker(Invoker invoker, ExtensionManager extensionManager, MetricsCollector metricsCollector) {
         this(invoker, null, extensionManager, metricsCollector, false, 30000);
@@ -41,10 +54,90 @@ public class Broker {
         this.asyncTimeout = asyncTimeout;
     }
 
+    /**
+     * Turns on the adaptive per-route concurrency limit. Every route starts at {@code initialLimit}
+     * concurrent calls and moves between {@code minLimit} and {@code maxLimit} as its latency
+     * changes; calls over the limit fail immediately with a RejectedExecutionException cause. The
+     * limit, in-flight count, minimum RTT and rejections are exported as
+     * {@code broker_concurrency_limit}, {@code broker_inflight}, {@code broker_min_rtt_ms} and
+     * {@code broker_limited_total}, labelled by route.
+     */
+    public void enableConcurrencyLimit(int initialLimit, int minLimit, int maxLimit) {
+        this.limiterBounds = new int[] {initialLimit, minLimit, maxLimit};
+    }
+
+    /**
+     * Invokes the request and waits for its outcome. Kept for callers that need a synchronous
+     * answer; gateways use {@link #invokeAsync(Request)} so that no thread waits on the result.
+     */
     public Response invoke(Request request) {
+        return invokeAsync(request).join();
+    }
+
+    /**
+     * Starts the invocation and returns a future of its Response. In async mode the call runs on the
+     * AsyncInvoker pool, otherwise on the calling thread. When the service method itself returns a
+     * CompletionStage, the Response completes with the stage instead of blocking a thread on it.
+     * The future never completes exceptionally: failures and timeouts become error Responses.
+     * On {@link Coalesce} routes, a call with the same arguments as one still in flight does not
+     * invoke anything and shares that call's Response; these are counted in
+     * {@code broker_coalesced_total}.
+     */
+    public CompletableFuture<Response> invokeAsync(Request request) {
+        Map<CallKey, CompletableFuture<Response>> calls = inFlightCalls.computeIfAbsent(request.method(),
+                m -> isCoalesced(m) ? new ConcurrentHashMap<>() : NOT_COALESCED);
+        if (calls == NOT_COALESCED) {
+            return execute(request);
+        }
+
+        CallKey key = new CallKey(request.instance(), request.params());
+        CompletableFuture<Response> call = new CompletableFuture<>();
+        CompletableFuture<Response> leader = calls.putIfAbsent(key, call);
+        if (leader != null) {
+            if (metricsCollector != null) {
+                metricsCollector.incrementCounter("broker_coalesced_total"
+                        + routeLabel(request.instance().getClass().getSimpleName(), request.method().getName()));
+            }
+            return leader;
+        }
+        CompletableFuture<Response> execution;
+        try {
+            execution = execute(request);
+        } catch (RuntimeException e) {
+            // Calls that already joined this one must get its failure, not wait on it forever
+            execution = CompletableFuture.completedFuture(new Response(null, new Exception(e)));
+        }
+        execution.whenComplete((response, error) -> {
+            // Unpublish first so calls arriving from now on start a fresh invocation
+            calls.remove(key, call);
+            call.complete(error == null ? response : new Response(null, new Exception(error)));
+        });
+        return call;
+    }
+
+    /**
+     * Streams can only be consumed once, so methods returning them are never coalesced.
+     */
+    private static boolean isCoalesced(Method method) {
+        return method.isAnnotationPresent(Coalesce.class) && !ParameterBinder.isStreamingType(method.getReturnType());
+    }
+
+    private CompletableFuture<Response> execute(Request request) {
         String serviceName = request.instance().getClass().getSimpleName();
         String methodName = request.method().getName();
 
+        ConcurrencyLimiter limiter = limiterBounds == null ? null
+                : limiters.computeIfAbsent(request.method(), m -> newLimiter(serviceName, methodName));
+        int inFlightAtStart = limiter == null ? 0 : limiter.tryAcquire();
+        if (inFlightAtStart < 0) {
+            if (metricsCollector != null) {
+                metricsCollector.incrementCounter("broker_limited_total" + routeLabel(serviceName, methodName));
+            }
+            String message = "Concurrency limit of " + limiter.limit() + " reached for " + serviceName + "." + methodName;
+            return CompletableFuture.completedFuture(
+                    new Response(null, new Exception(message, new RejectedExecutionException(message))));
+        }
+
         if (extensionManager != null) {
             try {
                 extensionManager.notifyInvoke(serviceName, methodName);
@@ -53,40 +146,106 @@ public class Broker {
         }
 
         long start = System.currentTimeMillis();
-        try {
-            Object result;
-            
+        long startNanos = System.nanoTime();
+        CompletableFuture<Object> result;
+        if (asyncMode) {
+            result = asyncInvoker.invokeAsync(request).thenCompose(Broker::awaitStage);
+        } else {
+            try {
+                result = awaitStage(invoker.invoke(request));
+            } catch (Throwable e) {
+                result = CompletableFuture.failedFuture(e);
+            }
+        }
+        if (!result.isDone()) {
+            result = result.orTimeout(asyncTimeout, TimeUnit.MILLISECONDS);
+        }
+
+        return result.handle((value, error) -> {
+            recordLatency(serviceName, methodName, start);
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (limiter != null) {
+                limiter.release(System.nanoTime() - startNanos, inFlightAtStart, cause instanceof TimeoutException);
+            }
+            if (error == null) {
+                return new Response(value, null);
+            }
+            if (cause instanceof TimeoutException) {
+                return new Response(null, new Exception("Async invocation timeout after " + asyncTimeout + "ms"));
+            }
             if (asyncMode) {
-                CompletableFuture<Object> future = asyncInvoker.invokeAsync(
-                    request.instance(), 
-                    request.method(), 
-                    request.params()
-                );
-                
-                try {
-                    result = future.get(asyncTimeout, TimeUnit.MILLISECONDS);
-                } catch (TimeoutException e) {
-                    return new Response(null, new Exception("Async invocation timeout after " + asyncTimeout + "ms"));
-                } catch (ExecutionException e) {
-                    return new Response(null, new Exception("Async invocation failed: " + e.getCause().getMessage(), e.getCause()));
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    return new Response(null, new Exception("Async invocation interrupted", e));
-                }
+                return new Response(null, new Exception("Async invocation failed: " + cause.getMessage(), cause));
+            }
+            return new Response(null, new Exception(cause));
+        });
+    }
+
+    /**
+     * Identity of a coalescable call: the same service instance and equal arguments.
+     */
+    private static final class CallKey {
+        private final Object instance;
+        private final Object[] params;
+        private final int hash;
+
+        CallKey(Object instance, Object[] params) {
+            this.instance = instance;
+            this.params = params;
+            this.hash = 31 * System.identityHashCode(instance) + Arrays.deepHashCode(params);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof CallKey other && instance == other.instance && hash == other.hash
+                    && Arrays.deepEquals(params, other.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Adapts a method result to a future. A returned CompletionStage is followed through a new
+     * future, so applying the timeout never completes the service's own future.
+     */
+    private static CompletableFuture<Object> awaitStage(Object value) {
+        if (!(value instanceof CompletionStage<?> stage)) {
+            return CompletableFuture.completedFuture(value);
+        }
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        stage.whenComplete((result, error) -> {
+            if (error != null) {
+                future.completeExceptionally(error);
             } else {
-                result = invoker.invoke(request.instance(), request.method(), request.params());
+                future.complete(result);
             }
-            
-            return new Response(result, null);
-        } catch (Throwable e) {
-            return new Response(null, new Exception(e));
-        } finally {
-            long latency = System.currentTimeMillis() - start;
-            if (metricsCollector != null) {
-                try {
-                    metricsCollector.record(serviceName, methodName, latency);
-                } catch (Exception ignored) {
-                }
+        });
+        return future;
+    }
+
+    private ConcurrencyLimiter newLimiter(String serviceName, String methodName) {
+        int[] bounds = limiterBounds;
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(bounds[0], bounds[1], bounds[2]);
+        if (metricsCollector != null) {
+            String label = routeLabel(serviceName, methodName);
+            metricsCollector.registerGauge("broker_concurrency_limit" + label, limiter::limit);
+            metricsCollector.registerGauge("broker_inflight" + label, limiter::inFlight);
+            metricsCollector.registerGauge("broker_min_rtt_ms" + label, limiter::minRttMillis);
+        }
+        return limiter;
+    }
+
+    private static String routeLabel(String serviceName, String methodName) {
+        return "{route=\"" + serviceName + "#" + methodName + "\"}";
+    }
+
+    private void recordLatency(String serviceName, String methodName, long start) {
+        if (metricsCollector != null) {
+            try {
+                metricsCollector.record(serviceName, methodName, System.currentTimeMillis() - start);
+            } catch (Exception ignored) {
             }
         }
     }
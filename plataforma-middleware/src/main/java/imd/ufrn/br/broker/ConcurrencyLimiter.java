@@ -0,0 +1,98 @@
+package imd.ufrn.br.broker;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Gradient concurrency limit for one route. Each completed call feeds its round-trip time into
+ * {@code limit = limit * (minRtt / rtt) + sqrt(limit)}: while calls take about as long as the
+ * fastest recently seen the limit grows by its square root, and once queueing inflates the RTT the
+ * gradient pulls it back down. RTTs within {@link #TOLERANCE} of the minimum count as unqueued so
+ * jitter on fast routes does not shrink the limit. The minimum is taken over a sliding window so it
+ * follows a route whose baseline latency changes. Timeouts back the limit off multiplicatively.
+ */
+final class ConcurrencyLimiter {
+
+    private static final long MIN_RTT_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(10);
+    private static final double TOLERANCE = 2.0;
+    private static final double SMOOTHING = 0.2;
+    private static final double BACKOFF = 0.9;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile double limit;
+    private long minRtt = Long.MAX_VALUE;
+    private long windowMinRtt = Long.MAX_VALUE;
+    private long windowStart = System.nanoTime();
+
+    ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+    }
+
+    /**
+     * @return the number of calls already in flight, or -1 when the limit is reached and the call
+     *         must be rejected
+     */
+    int tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return -1;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return current;
+            }
+        }
+    }
+
+    /**
+     * Ends a call admitted by {@link #tryAcquire()} and adjusts the limit from its outcome.
+     *
+     * @param inFlightAtStart the value tryAcquire returned for this call
+     */
+    void release(long rttNanos, int inFlightAtStart, boolean timedOut) {
+        inFlight.decrementAndGet();
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (now - windowStart > MIN_RTT_WINDOW_NANOS) {
+                if (windowMinRtt != Long.MAX_VALUE) {
+                    minRtt = windowMinRtt;
+                }
+                windowMinRtt = Long.MAX_VALUE;
+                windowStart = now;
+            }
+            long rtt = Math.max(1, rttNanos);
+            windowMinRtt = Math.min(windowMinRtt, rtt);
+            minRtt = Math.min(minRtt, rtt);
+
+            double current = limit;
+            double next;
+            if (timedOut) {
+                next = current * BACKOFF;
+            } else if (inFlightAtStart < current / 2) {
+                // Far below the limit this sample says nothing about how much more the route can take
+                return;
+            } else {
+                double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * minRtt / rtt));
+                double target = current * gradient + Math.sqrt(current);
+                next = current * (1 - SMOOTHING) + target * SMOOTHING;
+            }
+            limit = Math.min(maxLimit, Math.max(minLimit, next));
+        }
+    }
+
+    int limit() {
+        return (int) limit;
+    }
+
+    int inFlight() {
+        return inFlight.get();
+    }
+
+    synchronized double minRttMillis() {
+        return minRtt == Long.MAX_VALUE ? 0.0 : minRtt / 1_000_000.0;
+    }
+}
@@ -0,0 +1,126 @@
+package imd.ufrn.br.broker;
+
+import imd.ufrn.br.annotations.MethodMapping;
+import imd.ufrn.br.annotations.RequestMapping;
+import imd.ufrn.br.exceptions.InvocationException;
+import imd.ufrn.br.exceptions.ObjectNotFoundException;
+import imd.ufrn.br.registry.RouteInfo;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Typed client for calling registered services from inside the same JVM, one {@link LocalRoute} per
+ * interface method. A method annotated with {@link MethodMapping} (under the interface's
+ * {@link RequestMapping} path) calls the route with that verb and path, so the interface can mirror a
+ * service without the service implementing it; any other method calls the method with the same name
+ * and parameter types of a registered service that implements the interface. Routes are resolved when
+ * the proxy is created, so a method with no route fails right away instead of on its first call.
+ * <p>
+ * Methods declared to return a {@link CompletionStage} or {@link CompletableFuture} return without
+ * waiting for the call; the others wait and rethrow what the service method threw.
+ */
+public final class LocalProxy implements InvocationHandler {
+
+    private final Class<?> serviceInterface;
+    private final Map<Method, LocalRoute> routes;
+
+    private LocalProxy(Class<?> serviceInterface, Map<Method, LocalRoute> routes) {
+        this.serviceInterface = serviceInterface;
+        this.routes = routes;
+    }
+
+    /**
+     * @param registeredRoutes the registry's routes, keyed by {@code "VERB /path"}
+     * @throws ObjectNotFoundException when a method of the interface matches no registered route
+     */
+    public static <T> T create(Class<T> serviceInterface, Map<String, RouteInfo> registeredRoutes, Broker broker,
+                               boolean copyArguments) {
+        if (!serviceInterface.isInterface()) {
+            throw new IllegalArgumentException(serviceInterface.getName() + " is not an interface.");
+        }
+        RequestMapping requestMapping = serviceInterface.getAnnotation(RequestMapping.class);
+        String basePath = requestMapping != null ? requestMapping.path() : "";
+
+        Map<Method, LocalRoute> routes = new HashMap<>();
+        for (Method method : serviceInterface.getMethods()) {
+            if (method.isDefault() || Modifier.isStatic(method.getModifiers())) {
+                continue;
+            }
+            RouteInfo route = resolve(serviceInterface, basePath, method, registeredRoutes);
+            if (route.parameterTypes().length != method.getParameterCount()) {
+                throw new IllegalArgumentException(serviceInterface.getSimpleName() + "." + method.getName() + " takes "
+                        + method.getParameterCount() + " parameters, but " + route.verb() + " " + route.path() + " takes "
+                        + route.parameterTypes().length + ".");
+            }
+            routes.put(method, new LocalRoute(broker, route, copyArguments));
+        }
+        return serviceInterface.cast(Proxy.newProxyInstance(serviceInterface.getClassLoader(),
+                new Class<?>[] {serviceInterface}, new LocalProxy(serviceInterface, routes)));
+    }
+
+    private static RouteInfo resolve(Class<?> serviceInterface, String basePath, Method method,
+                                     Map<String, RouteInfo> registeredRoutes) {
+        MethodMapping mapping = method.getAnnotation(MethodMapping.class);
+        if (mapping != null) {
+            String routeKey = mapping.verb().name() + " " + basePath + mapping.path();
+            RouteInfo route = registeredRoutes.get(routeKey);
+            if (route == null) {
+                throw new ObjectNotFoundException("No route registered for " + routeKey + ", mapped by "
+                        + serviceInterface.getSimpleName() + "." + method.getName());
+            }
+            return route;
+        }
+        for (RouteInfo route : registeredRoutes.values()) {
+            if (serviceInterface.isInstance(route.instance()) && route.method().getName().equals(method.getName())
+                    && Arrays.equals(route.parameterTypes(), method.getParameterTypes())) {
+                return route;
+            }
+        }
+        throw new ObjectNotFoundException("No registered service implementing " + serviceInterface.getSimpleName()
+                + " exposes " + method.getName() + " as a route");
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return switch (method.getName()) {
+                case "equals" -> proxy == args[0];
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "toString" -> "LocalProxy[" + serviceInterface.getName() + "]";
+                default -> throw new UnsupportedOperationException(method.getName());
+            };
+        }
+        if (method.isDefault()) {
+            return InvocationHandler.invokeDefault(proxy, method, args);
+        }
+
+        CompletableFuture<Object> result = routes.get(method).invokeAsync(args);
+        if (method.getReturnType().isAssignableFrom(CompletableFuture.class)
+                && CompletionStage.class.isAssignableFrom(method.getReturnType())) {
+            return result;
+        }
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException || cause instanceof Error) {
+                throw cause;
+            }
+            for (Class<?> declared : method.getExceptionTypes()) {
+                if (declared.isInstance(cause)) {
+                    throw cause;
+                }
+            }
+            throw new InvocationException(cause.getMessage(), cause);
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package imd.ufrn.br.broker;
+
+import imd.ufrn.br.exceptions.InvocationException;
+import imd.ufrn.br.registry.RouteInfo;
+import imd.ufrn.br.remoting.JsonMarshaller;
+import imd.ufrn.br.remoting.Request;
+import imd.ufrn.br.remoting.Response;
+
+import java.io.InputStream;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.time.temporal.TemporalAccessor;
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.stream.BaseStream;
+
+/**
+ * Handle for calling one registered route from inside the same JVM. The arguments are handed to the
+ * {@link Broker} as they are, and the result comes back as the service method returned it, so nothing
+ * is marshalled; extensions, metrics, coalescing, bulkheads and the concurrency limit still apply as
+ * for a remote call. Gateway concerns (admission control, the response cache, compression) do not.
+ * <p>
+ * With {@code copyArguments}, arguments and results are deep-copied on the way in and out, giving
+ * the by-value semantics of a remote call: neither side can change an object the other still holds.
+ * Strings, numbers, enums, date/time values and streams are passed as they are.
+ */
+public final class LocalRoute {
+
+    private static final JsonMarshaller COPIER = new JsonMarshaller();
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private final Broker broker;
+    private final RouteInfo route;
+    private final boolean copyArguments;
+    private final Type[] parameterTypes;
+    private final Type resultType;
+
+    public LocalRoute(Broker broker, RouteInfo route, boolean copyArguments) {
+        this.broker = broker;
+        this.route = route;
+        this.copyArguments = copyArguments;
+        this.parameterTypes = route.method().getGenericParameterTypes();
+        this.resultType = resultTypeOf(route);
+    }
+
+    public RouteInfo route() {
+        return route;
+    }
+
+    /**
+     * Calls the route and waits for its result. Exceptions thrown by the service method are rethrown
+     * as they are when unchecked, and wrapped in an InvocationException otherwise.
+     */
+    public Object invoke(Object... args) {
+        try {
+            return invokeAsync(args).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw new InvocationException(cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Starts the call. The future completes exceptionally with whatever the service method threw, or
+     * with the Broker's rejection or timeout.
+     */
+    public CompletableFuture<Object> invokeAsync(Object... args) {
+        Object[] params = args == null ? NO_ARGS : args;
+        if (params.length != parameterTypes.length) {
+            throw new IllegalArgumentException(route.verb() + " " + route.path() + " takes " + parameterTypes.length
+                    + " arguments, got " + params.length);
+        }
+        if (copyArguments) {
+            Object[] copies = new Object[params.length];
+            for (int i = 0; i < params.length; i++) {
+                copies[i] = copy(params[i], parameterTypes[i]);
+            }
+            params = copies;
+        }
+        return broker.invokeAsync(new Request(route.instance(), route.method(), params, route.accessor()))
+                .thenApply(this::resultOf);
+    }
+
+    private Object resultOf(Response response) {
+        if (response.hasError()) {
+            throw new CompletionException(failureOf(response.getError()));
+        }
+        return copyArguments ? copy(response.getResult(), resultType) : response.getResult();
+    }
+
+    /**
+     * The Broker wraps what the service threw; rejections and timeouts it raises itself have no cause.
+     */
+    private static Throwable failureOf(Exception error) {
+        return error.getCause() != null ? error.getCause() : new InvocationException(error.getMessage());
+    }
+
+    private static Object copy(Object value, Type type) {
+        if (value == null || !isCopied(value.getClass())) {
+            return value;
+        }
+        return COPIER.copy(value, type == Object.class ? value.getClass() : type);
+    }
+
+    /**
+     * Values that are immutable, or that can only be consumed once, are not copied.
+     */
+    private static boolean isCopied(Class<?> type) {
+        return !(type == String.class || type == Boolean.class || type == Character.class || type == UUID.class
+                || type.isEnum() || (Number.class.isAssignableFrom(type) && type.getName().startsWith("java."))
+                || TemporalAccessor.class.isAssignableFrom(type)
+                || BaseStream.class.isAssignableFrom(type) || Iterator.class.isAssignableFrom(type)
+                || Flow.Publisher.class.isAssignableFrom(type) || InputStream.class.isAssignableFrom(type));
+    }
+
+    /**
+     * The type of the value the Broker completes with, which for a method returning a CompletionStage
+     * is the type the stage completes with.
+     */
+    private static Type resultTypeOf(RouteInfo route) {
+        Type type = route.method().getGenericReturnType();
+        if (CompletionStage.class.isAssignableFrom(route.method().getReturnType())) {
+            return type instanceof ParameterizedType parameterized ? parameterized.getActualTypeArguments()[0] : Object.class;
+        }
+        return type;
+    }
+}
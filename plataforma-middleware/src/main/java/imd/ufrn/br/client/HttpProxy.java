@@ -0,0 +1,289 @@
+package imd.ufrn.br.client;
+
+import imd.ufrn.br.annotations.MethodMapping;
+import imd.ufrn.br.annotations.PathVariable;
+import imd.ufrn.br.annotations.RequestMapping;
+import imd.ufrn.br.annotations.Timeout;
+import imd.ufrn.br.exceptions.MarshallingException;
+import imd.ufrn.br.exceptions.RemoteCallException;
+import imd.ufrn.br.exceptions.RemotingException;
+
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Invocation handler behind {@link HttpServiceClient#proxy}. Each method is turned into a request the
+ * way the gateway reads it back: the verb and path of its {@link MethodMapping} (under the interface's
+ * {@link RequestMapping} path), parameters annotated with {@link PathVariable} percent-encoded into
+ * the path, and the other parameters, in order, as the JSON array body. A 2xx response body is read
+ * as the method's return type; any other status is thrown as a {@link RemoteCallException}. Routes
+ * returning a stream send a JSON array, so their client methods declare a {@code List} instead. Each
+ * call goes to the endpoint the client's {@link LoadBalancer} picks, and reports back how it went.
+ * <p>
+ * Methods declared to return a {@link CompletionStage} or {@link CompletableFuture} send the request
+ * without blocking and complete with the response; the others wait for it. Failures to reach the
+ * server, timeouts included, are rethrown as they are when the method declares them and as a
+ * RemotingException otherwise.
+ */
+final class HttpProxy implements InvocationHandler {
+
+    private static final Pattern PATH_VARIABLE = Pattern.compile("\\{(\\*?)([^}]+)}");
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    private final Class<?> serviceInterface;
+    private final HttpServiceClient client;
+    private final Map<Method, Call> calls;
+
+    /**
+     * A method of the interface, resolved once into what its requests are built from.
+     */
+    private record Call(String service, String verb, String route, String[] literals, int[] variableArgs,
+                        boolean[] catchAll, int[] bodyArgs, Type resultType, boolean async, Duration timeout) {
+    }
+
+    private HttpProxy(Class<?> serviceInterface, HttpServiceClient client, Map<Method, Call> calls) {
+        this.serviceInterface = serviceInterface;
+        this.client = client;
+        this.calls = calls;
+    }
+
+    static <T> T create(Class<T> serviceInterface, HttpServiceClient client) {
+        if (!serviceInterface.isInterface()) {
+            throw new IllegalArgumentException(serviceInterface.getName() + " is not an interface.");
+        }
+        RequestMapping requestMapping = serviceInterface.getAnnotation(RequestMapping.class);
+        String basePath = requestMapping != null ? requestMapping.path() : "";
+
+        Map<Method, Call> calls = new HashMap<>();
+        for (Method method : serviceInterface.getMethods()) {
+            if (!method.isDefault() && !Modifier.isStatic(method.getModifiers())) {
+                calls.put(method, resolve(serviceInterface, basePath, method, client.requestTimeout()));
+            }
+        }
+        return serviceInterface.cast(Proxy.newProxyInstance(serviceInterface.getClassLoader(),
+                new Class<?>[] {serviceInterface}, new HttpProxy(serviceInterface, client, calls)));
+    }
+
+    private static Call resolve(Class<?> serviceInterface, String basePath, Method method, Duration defaultTimeout) {
+        MethodMapping mapping = method.getAnnotation(MethodMapping.class);
+        if (mapping == null) {
+            throw new IllegalArgumentException(serviceInterface.getSimpleName() + "." + method.getName()
+                    + " has no @MethodMapping.");
+        }
+        String path = basePath + mapping.path();
+        String route = mapping.verb().name() + " " + path;
+
+        Map<String, Integer> pathParameters = new HashMap<>();
+        List<Integer> bodyArgs = new ArrayList<>();
+        Annotation[][] annotations = method.getParameterAnnotations();
+        for (int i = 0; i < annotations.length; i++) {
+            String variable = null;
+            for (Annotation annotation : annotations[i]) {
+                if (annotation instanceof PathVariable pathVariable) {
+                    variable = pathVariable.value();
+                }
+            }
+            if (variable != null) {
+                pathParameters.put(variable, i);
+            } else {
+                bodyArgs.add(i);
+            }
+        }
+
+        List<String> literals = new ArrayList<>();
+        List<Integer> variableArgs = new ArrayList<>();
+        List<Boolean> catchAll = new ArrayList<>();
+        Matcher matcher = PATH_VARIABLE.matcher(path);
+        int literalStart = 0;
+        while (matcher.find()) {
+            Integer argument = pathParameters.remove(matcher.group(2));
+            if (argument == null) {
+                throw new IllegalArgumentException(serviceInterface.getSimpleName() + "." + method.getName()
+                        + " has no @PathVariable(\"" + matcher.group(2) + "\") parameter for " + route + ".");
+            }
+            literals.add(path.substring(literalStart, matcher.start()));
+            variableArgs.add(argument);
+            catchAll.add(!matcher.group(1).isEmpty());
+            literalStart = matcher.end();
+        }
+        literals.add(path.substring(literalStart));
+        if (!pathParameters.isEmpty()) {
+            throw new IllegalArgumentException(serviceInterface.getSimpleName() + "." + method.getName()
+                    + " binds path variables " + pathParameters.keySet() + ", which " + route + " does not declare.");
+        }
+
+        boolean async = method.getReturnType().isAssignableFrom(CompletableFuture.class)
+                && CompletionStage.class.isAssignableFrom(method.getReturnType());
+        Type resultType = method.getGenericReturnType();
+        if (async) {
+            resultType = resultType instanceof ParameterizedType parameterized
+                    ? parameterized.getActualTypeArguments()[0] : Object.class;
+        }
+        Timeout timeout = method.getAnnotation(Timeout.class);
+
+        boolean[] catchAllFlags = new boolean[catchAll.size()];
+        for (int i = 0; i < catchAllFlags.length; i++) {
+            catchAllFlags[i] = catchAll.get(i);
+        }
+        String service = basePath.startsWith("/") ? basePath.substring(1) : basePath;
+        return new Call(service, mapping.verb().name(), route, literals.toArray(new String[0]),
+                variableArgs.stream().mapToInt(Integer::intValue).toArray(), catchAllFlags,
+                bodyArgs.stream().mapToInt(Integer::intValue).toArray(), resultType, async,
+                timeout != null ? Duration.ofMillis(timeout.value()) : defaultTimeout);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        if (method.getDeclaringClass() == Object.class) {
+            return switch (method.getName()) {
+                case "equals" -> proxy == args[0];
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "toString" -> "HttpProxy[" + serviceInterface.getName() + " @ " + client.balancer().endpoints() + "]";
+                default -> throw new UnsupportedOperationException(method.getName());
+            };
+        }
+        if (method.isDefault()) {
+            return InvocationHandler.invokeDefault(proxy, method, args);
+        }
+
+        Call call = calls.get(method);
+        String path = pathOf(call, args);
+        HttpRequest.Builder builder = requestFor(call, args);
+        LoadBalancer balancer = client.balancer();
+        LoadBalancer.Endpoint endpoint = balancer.pick(call.service());
+        HttpRequest request;
+        try {
+            request = builder.uri(URI.create(endpoint.baseUrl() + path)).build();
+        } catch (RuntimeException e) {
+            balancer.cancelled(endpoint);
+            throw e;
+        }
+        long start = System.nanoTime();
+        if (call.async()) {
+            return client.httpClient().sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                    .whenComplete((response, error) -> release(endpoint, start, response))
+                    .thenApply(response -> read(call, response));
+        }
+        HttpResponse<byte[]> response;
+        try {
+            response = client.httpClient().send(request, HttpResponse.BodyHandlers.ofByteArray());
+        } catch (IOException e) {
+            balancer.failed(endpoint);
+            for (Class<?> declared : method.getExceptionTypes()) {
+                if (declared.isInstance(e)) {
+                    throw e;
+                }
+            }
+            throw new RemotingException(call.route() + " failed: " + e, e);
+        } catch (InterruptedException e) {
+            balancer.cancelled(endpoint);
+            Thread.currentThread().interrupt();
+            throw new RemotingException(call.route() + " was interrupted", e);
+        }
+        release(endpoint, start, response);
+        return read(call, response);
+    }
+
+    /**
+     * Counts a call as failed on its endpoint when no response came back, or the instance answered
+     * that it is overloaded.
+     */
+    private void release(LoadBalancer.Endpoint endpoint, long startNanos, HttpResponse<?> response) {
+        if (response == null || response.statusCode() == 503) {
+            client.balancer().failed(endpoint);
+        } else {
+            client.balancer().completed(endpoint, System.nanoTime() - startNanos);
+        }
+    }
+
+    private static String pathOf(Call call, Object[] args) {
+        StringBuilder path = new StringBuilder(call.literals()[0]);
+        for (int i = 0; i < call.variableArgs().length; i++) {
+            encode(path, String.valueOf(args[call.variableArgs()[i]]), call.catchAll()[i]);
+            path.append(call.literals()[i + 1]);
+        }
+        return path.toString();
+    }
+
+    /**
+     * Everything of the request but its URI, which depends on the endpoint chosen.
+     */
+    private HttpRequest.Builder requestFor(Call call, Object[] args) {
+        HttpRequest.BodyPublisher body = HttpRequest.BodyPublishers.noBody();
+        if (call.bodyArgs().length > 0) {
+            Object[] bodyValues = new Object[call.bodyArgs().length];
+            for (int i = 0; i < bodyValues.length; i++) {
+                bodyValues[i] = args[call.bodyArgs()[i]];
+            }
+            body = HttpRequest.BodyPublishers.ofString(client.marshaller().serialize(bodyValues), StandardCharsets.UTF_8);
+        }
+        return HttpRequest.newBuilder()
+                .timeout(call.timeout())
+                .header("Content-Type", "application/json")
+                .header("Accept", "application/json")
+                .method(call.verb(), body);
+    }
+
+    private Object read(Call call, HttpResponse<byte[]> response) {
+        int statusCode = response.statusCode();
+        if (statusCode / 100 != 2) {
+            throw remoteError(statusCode, response.body());
+        }
+        if (call.resultType() == void.class || call.resultType() == Void.class) {
+            return null;
+        }
+        Object result = client.marshaller().unmarshal(response.body(), call.resultType());
+        if (result == null && call.resultType() instanceof Class<?> type && type.isPrimitive()) {
+            throw new MarshallingException(call.route() + " returned no value for " + type.getName(), null);
+        }
+        return result;
+    }
+
+    /**
+     * Reads the gateway's {@code {"error": ..., "message": ...}} body, falling back to the raw body.
+     */
+    private RemoteCallException remoteError(int statusCode, byte[] body) {
+        try {
+            if (client.marshaller().unmarshal(body, Map.class) instanceof Map<?, ?> error && error.get("message") != null) {
+                return new RemoteCallException(statusCode, String.valueOf(error.get("error")), String.valueOf(error.get("message")));
+            }
+        } catch (MarshallingException ignored) {
+        }
+        return new RemoteCallException(statusCode, null, new String(body, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Percent-encodes {@code value} as a path segment, keeping slashes for a {@code {*name}} variable,
+     * which spans the rest of the path.
+     */
+    private static void encode(StringBuilder url, String value, boolean keepSlashes) {
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xff);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '.' || c == '_' || c == '~' || (keepSlashes && c == '/')) {
+                url.append(c);
+            } else {
+                url.append('%').append(HEX[(b >> 4) & 0xf]).append(HEX[b & 0xf]);
+            }
+        }
+    }
+}
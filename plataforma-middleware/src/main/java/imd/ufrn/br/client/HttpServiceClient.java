@@ -0,0 +1,86 @@
+package imd.ufrn.br.client;
+
+import imd.ufrn.br.remoting.JsonMarshaller;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * HTTP client of the middleware, for callers in other processes. {@link #proxy} turns an interface
+ * annotated like a service (with {@code @RequestMapping}, {@code @MethodMapping} and
+ * {@code @PathVariable}) into a typed client of the service it mirrors; see {@link HttpProxy}.
+ * <p>
+ * All proxies of a client share one {@link HttpClient}, which keeps idle connections to the
+ * middleware open and reuses them across calls and threads, so calls after the first skip the TCP
+ * handshake. Requests go out as HTTP/1.1, which both gateway engines speak, and bodies are written
+ * and read with the same {@link JsonMarshaller} the server binds parameters with.
+ * <p>
+ * A client created with a {@link LoadBalancer} sends each call to one of several middleware
+ * instances.
+ */
+public class HttpServiceClient {
+
+    private static final Duration DEFAULT_CONNECT_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration DEFAULT_REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final LoadBalancer balancer;
+    private final Duration requestTimeout;
+    private final HttpClient httpClient;
+    private final JsonMarshaller marshaller = new JsonMarshaller();
+
+    /**
+     * @param baseUrl the gateway's address, such as {@code http://localhost:8082}
+     */
+    public HttpServiceClient(String baseUrl) {
+        this(URI.create(baseUrl), DEFAULT_CONNECT_TIMEOUT, DEFAULT_REQUEST_TIMEOUT);
+    }
+
+    /**
+     * @param requestTimeout how long a call waits for its response, unless its method carries
+     *                       {@code @Timeout}
+     */
+    public HttpServiceClient(URI baseUri, Duration connectTimeout, Duration requestTimeout) {
+        this(new LoadBalancer(List.of(baseUri)), connectTimeout, requestTimeout);
+    }
+
+    /**
+     * @param balancer chooses the middleware instance each call goes to
+     */
+    public HttpServiceClient(LoadBalancer balancer, Duration connectTimeout, Duration requestTimeout) {
+        this.balancer = balancer;
+        this.requestTimeout = requestTimeout;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(connectTimeout)
+                .build();
+    }
+
+    /**
+     * Creates a client of the service mirrored by {@code serviceInterface}. Every abstract method of
+     * the interface must carry {@code @MethodMapping}.
+     *
+     * @throws IllegalArgumentException when a method has no mapping, or a path variable of its route
+     *                                  has no parameter
+     */
+    public <T> T proxy(Class<T> serviceInterface) {
+        return HttpProxy.create(serviceInterface, this);
+    }
+
+    public LoadBalancer balancer() {
+        return balancer;
+    }
+
+    Duration requestTimeout() {
+        return requestTimeout;
+    }
+
+    HttpClient httpClient() {
+        return httpClient;
+    }
+
+    JsonMarshaller marshaller() {
+        return marshaller;
+    }
+}
@@ -0,0 +1,259 @@
+package imd.ufrn.br.client;
+
+import imd.ufrn.br.monitoring.HeartbeatMonitor;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Spreads the calls of an {@link HttpServiceClient} over several middleware instances.
+ * <p>
+ * With {@link Strategy#LEAST_LOADED}, the default, each call samples two endpoints at random and
+ * takes the one with the lower cost: its latency estimate times its calls in flight plus one. The
+ * estimate is a peak-sensitive moving average: a slower response raises it at once, faster ones
+ * bring it down gradually over the decay time, and it also decays while the endpoint gets no calls,
+ * so an endpoint that was slow is tried again later. Sampling two instead of scanning every endpoint
+ * keeps callers that share no state from all piling onto the same "best" endpoint.
+ * <p>
+ * An endpoint is ejected for a while after a number of consecutive failures (connection errors,
+ * timeouts and 503 responses), and skipped while a {@link HeartbeatMonitor} attached with
+ * {@link #useHealth} reports the called service as unhealthy. When no endpoint is left, calls go to
+ * all of them anyway rather than failing outright.
+ */
+public class LoadBalancer {
+
+    public enum Strategy {
+        /** Power of two choices over latency times calls in flight. */
+        LEAST_LOADED,
+        /** Each endpoint in turn, ignoring load; kept as a baseline. */
+        ROUND_ROBIN
+    }
+
+    private static final long DEFAULT_DECAY_MS = 10000;
+    private static final int DEFAULT_MAX_FAILURES = 3;
+    private static final long DEFAULT_EJECTION_MS = 5000;
+
+    private final Endpoint[] endpoints;
+    private final Strategy strategy;
+    private final double decayNanos;
+    private final int maxFailures;
+    private final long ejectionNanos;
+    private final AtomicInteger nextEndpoint = new AtomicInteger();
+
+    /**
+     * One middleware instance, with the statistics the balancer keeps for it.
+     */
+    public static final class Endpoint {
+        private final String baseUrl;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private double latencyNanos;
+        private long lastSampleNanos = System.nanoTime();
+        private volatile long ejectedUntilNanos = System.nanoTime();
+        private volatile HeartbeatMonitor monitor;
+
+        Endpoint(String baseUrl) {
+            this.baseUrl = baseUrl;
+        }
+
+        public String baseUrl() {
+            return baseUrl;
+        }
+
+        /** Calls sent to this endpoint that have not completed yet. */
+        public int outstanding() {
+            return outstanding.get();
+        }
+
+        /** Calls sent to this endpoint so far. */
+        public long requests() {
+            return requests.get();
+        }
+
+        /** The current latency estimate, before decay for idle time. */
+        public synchronized double latencyMillis() {
+            return latencyNanos / 1e6;
+        }
+
+        public boolean isEjected() {
+            return System.nanoTime() - ejectedUntilNanos < 0;
+        }
+
+        synchronized double cost(long now, double decayNanos) {
+            double decayed = latencyNanos * Math.exp(-Math.max(0, now - lastSampleNanos) / decayNanos);
+            return decayed * (outstanding.get() + 1);
+        }
+
+        synchronized void sample(long latency, long now, double decayNanos) {
+            if (latency > latencyNanos) {
+                latencyNanos = latency;
+            } else {
+                double weight = Math.exp(-Math.max(0, now - lastSampleNanos) / decayNanos);
+                latencyNanos = latencyNanos * weight + latency * (1 - weight);
+            }
+            lastSampleNanos = now;
+        }
+
+        boolean isHealthy(String service) {
+            HeartbeatMonitor healthSource = monitor;
+            if (healthSource == null) {
+                return true;
+            }
+            Map<String, Boolean> status = healthSource.getHealthStatus();
+            Boolean healthy = status.get(service);
+            return healthy == null || healthy;
+        }
+
+        @Override
+        public String toString() {
+            return baseUrl;
+        }
+    }
+
+    public LoadBalancer(List<URI> endpoints) {
+        this(endpoints, Strategy.LEAST_LOADED, DEFAULT_DECAY_MS, DEFAULT_MAX_FAILURES, DEFAULT_EJECTION_MS);
+    }
+
+    /**
+     * @param decayMs     how long the latency estimate of an endpoint takes to forget a slow response
+     * @param maxFailures consecutive failures after which an endpoint is ejected
+     * @param ejectionMs  how long an ejected endpoint is skipped
+     */
+    public LoadBalancer(List<URI> endpoints, Strategy strategy, long decayMs, int maxFailures, long ejectionMs) {
+        if (endpoints.isEmpty()) {
+            throw new IllegalArgumentException("A load balancer needs at least one endpoint.");
+        }
+        this.endpoints = new Endpoint[endpoints.size()];
+        for (int i = 0; i < this.endpoints.length; i++) {
+            this.endpoints[i] = new Endpoint(baseUrlOf(endpoints.get(i)));
+        }
+        this.strategy = strategy;
+        this.decayNanos = TimeUnit.MILLISECONDS.toNanos(decayMs);
+        this.maxFailures = Math.max(1, maxFailures);
+        this.ejectionNanos = TimeUnit.MILLISECONDS.toNanos(ejectionMs);
+    }
+
+    /**
+     * Skips {@code endpoint} for the services {@code monitor} reports as unhealthy. The monitor must
+     * be pointed at that endpoint ({@link HeartbeatMonitor#setEndpoint}) and started.
+     */
+    public void useHealth(URI endpoint, HeartbeatMonitor monitor) {
+        String baseUrl = baseUrlOf(endpoint);
+        for (Endpoint candidate : endpoints) {
+            if (candidate.baseUrl.equals(baseUrl)) {
+                candidate.monitor = monitor;
+                return;
+            }
+        }
+        throw new IllegalArgumentException(baseUrl + " is not an endpoint of this load balancer.");
+    }
+
+    public List<Endpoint> endpoints() {
+        return List.of(endpoints);
+    }
+
+    /**
+     * Chooses the endpoint for a call to {@code service} and counts the call as in flight on it. Every
+     * pick must be followed by {@link #completed}, {@link #failed} or {@link #cancelled}.
+     *
+     * @param service the service name, as in the {@code /health/<service>} path
+     */
+    Endpoint pick(String service) {
+        long now = System.nanoTime();
+        Endpoint chosen = strategy == Strategy.ROUND_ROBIN ? roundRobin(service, now) : leastLoaded(service, now);
+        chosen.outstanding.incrementAndGet();
+        chosen.requests.incrementAndGet();
+        return chosen;
+    }
+
+    void completed(Endpoint endpoint, long latencyNanos) {
+        endpoint.outstanding.decrementAndGet();
+        endpoint.consecutiveFailures.set(0);
+        endpoint.sample(latencyNanos, System.nanoTime(), decayNanos);
+    }
+
+    void failed(Endpoint endpoint) {
+        endpoint.outstanding.decrementAndGet();
+        if (endpoint.consecutiveFailures.incrementAndGet() >= maxFailures && !endpoint.isEjected()) {
+            endpoint.ejectedUntilNanos = System.nanoTime() + ejectionNanos;
+            System.err.println("LoadBalancer: Endpoint " + endpoint.baseUrl + " ejected for "
+                    + TimeUnit.NANOSECONDS.toMillis(ejectionNanos) + "ms after " + endpoint.consecutiveFailures.get()
+                    + " consecutive failures");
+        }
+    }
+
+    /**
+     * Ends a call that failed for reasons unrelated to the endpoint, such as an interrupted caller.
+     */
+    void cancelled(Endpoint endpoint) {
+        endpoint.outstanding.decrementAndGet();
+    }
+
+    private Endpoint leastLoaded(String service, long now) {
+        if (endpoints.length == 1) {
+            return endpoints[0];
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int first = random.nextInt(endpoints.length);
+        int second = random.nextInt(endpoints.length - 1);
+        if (second >= first) {
+            second++;
+        }
+        Endpoint a = endpoints[first];
+        Endpoint b = endpoints[second];
+        boolean aAvailable = isAvailable(a, service, now);
+        boolean bAvailable = isAvailable(b, service, now);
+        if (aAvailable && bAvailable) {
+            return a.cost(now, decayNanos) <= b.cost(now, decayNanos) ? a : b;
+        }
+
+        // Slow path: at least one of the pair is out, so sample among the endpoints still in
+        List<Endpoint> available = new ArrayList<>(endpoints.length);
+        for (Endpoint endpoint : endpoints) {
+            if (isAvailable(endpoint, service, now)) {
+                available.add(endpoint);
+            }
+        }
+        if (available.isEmpty()) {
+            available = List.of(endpoints);
+        }
+        if (available.size() == 1) {
+            return available.get(0);
+        }
+        first = random.nextInt(available.size());
+        second = random.nextInt(available.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        a = available.get(first);
+        b = available.get(second);
+        return a.cost(now, decayNanos) <= b.cost(now, decayNanos) ? a : b;
+    }
+
+    private Endpoint roundRobin(String service, long now) {
+        int start = Math.floorMod(nextEndpoint.getAndIncrement(), endpoints.length);
+        for (int i = 0; i < endpoints.length; i++) {
+            Endpoint endpoint = endpoints[(start + i) % endpoints.length];
+            if (isAvailable(endpoint, service, now)) {
+                return endpoint;
+            }
+        }
+        return endpoints[start];
+    }
+
+    private static boolean isAvailable(Endpoint endpoint, String service, long now) {
+        return now - endpoint.ejectedUntilNanos >= 0 && endpoint.isHealthy(service);
+    }
+
+    static String baseUrlOf(URI endpoint) {
+        String url = endpoint.toString();
+        return url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+    }
+}
@@ -22,13 +22,49 @@ public class MiddlewareConfig {
     private void loadDefaultProperties() {
         properties.putIfAbsent("server.http.port", "8082");
         properties.putIfAbsent("server.tcp.port", "8085");
+        properties.putIfAbsent("server.tcp.enabled", "false");
+        properties.putIfAbsent("tcp.max.frame.bytes", "16777216");
+        properties.putIfAbsent("server.uds.path", "");
+        properties.putIfAbsent("ipc.shm.file", "");
+        properties.putIfAbsent("ipc.shm.channels", "16");
+        properties.putIfAbsent("ipc.shm.ring.bytes", "1048576");
         properties.putIfAbsent("server.udp.port", "8086");
+        properties.putIfAbsent("server.udp.enabled", "false");
+        properties.putIfAbsent("udp.queue.capacity", "1024");
         properties.putIfAbsent("server.host", "localhost");
         
+        properties.putIfAbsent("gateway.engine", "jdk");
+        properties.putIfAbsent("gateway.nio.eventloops", "0");
+        properties.putIfAbsent("gateway.nio.workers", "0");
+        properties.putIfAbsent("gateway.nio.idle.timeout.ms", "60000");
+        properties.putIfAbsent("gateway.nio.max.request.bytes", "16777216");
+        properties.putIfAbsent("gateway.websocket.path", "/ws");
+        properties.putIfAbsent("gateway.admission.max.inflight", "0");
+        properties.putIfAbsent("gateway.admission.max.queued", "100");
+        properties.putIfAbsent("gateway.admission.queue.timeout.ms", "1000");
+        properties.putIfAbsent("gateway.admission.retry.after.s", "1");
+        properties.putIfAbsent("gateway.batch.max.calls", "100");
+        properties.putIfAbsent("gateway.batch.parallelism", "8");
+        properties.putIfAbsent("gateway.compression.enabled", "true");
+        properties.putIfAbsent("gateway.compression.min.bytes", "1024");
+        properties.putIfAbsent("gateway.compression.level", "6");
+        
+        properties.putIfAbsent("invoker.strategy", "methodhandle");
+        properties.putIfAbsent("remoting.marshallers", "json,cbor,smile");
+        properties.putIfAbsent("cache.max.bytes", "16777216");
+        properties.putIfAbsent("broker.limiter.enabled", "false");
+        properties.putIfAbsent("broker.limiter.initial", "20");
+        properties.putIfAbsent("broker.limiter.min", "1");
+        properties.putIfAbsent("broker.limiter.max", "200");
+        properties.putIfAbsent("local.copy.arguments", "false");
+        
         properties.putIfAbsent("async.enabled", "false");
         properties.putIfAbsent("async.poolsize", "10");
         properties.putIfAbsent("async.timeout.ms", "30000");
         
+        properties.putIfAbsent("threads.mode", "platform");
+        properties.putIfAbsent("threads.virtual.pinning.threshold.ms", "20");
+        
         properties.putIfAbsent("async.threadpool.size", "8");
         properties.putIfAbsent("udp.threadpool.size", "20");
         properties.putIfAbsent("tcp.threadpool.size", "10");
@@ -70,13 +106,49 @@ public class MiddlewareConfig {
     
     public int getHttpPort() { return Integer.parseInt(properties.getProperty("server.http.port")); }
     public int getTcpPort() { return Integer.parseInt(properties.getProperty("server.tcp.port")); }
+    public boolean isTcpEnabled() { return Boolean.parseBoolean(properties.getProperty("server.tcp.enabled")); }
+    public int getTcpMaxFrameBytes() { return Integer.parseInt(properties.getProperty("tcp.max.frame.bytes")); }
+    public String getUdsPath() { return properties.getProperty("server.uds.path").trim(); }
+    public String getShmFile() { return properties.getProperty("ipc.shm.file").trim(); }
+    public int getShmChannels() { return Integer.parseInt(properties.getProperty("ipc.shm.channels")); }
+    public int getShmRingBytes() { return Integer.parseInt(properties.getProperty("ipc.shm.ring.bytes")); }
     public int getUdpPort() { return Integer.parseInt(properties.getProperty("server.udp.port")); }
+    public boolean isUdpEnabled() { return Boolean.parseBoolean(properties.getProperty("server.udp.enabled")); }
+    public int getUdpQueueCapacity() { return Integer.parseInt(properties.getProperty("udp.queue.capacity")); }
     public String getServerHost() { return properties.getProperty("server.host"); }
     
+    public String getGatewayEngine() { return properties.getProperty("gateway.engine"); }
+    public int getNioEventLoops() { return Integer.parseInt(properties.getProperty("gateway.nio.eventloops")); }
+    public int getNioWorkerThreads() { return Integer.parseInt(properties.getProperty("gateway.nio.workers")); }
+    public long getNioIdleTimeoutMs() { return Long.parseLong(properties.getProperty("gateway.nio.idle.timeout.ms")); }
+    public int getNioMaxRequestBytes() { return Integer.parseInt(properties.getProperty("gateway.nio.max.request.bytes")); }
+    public String getWebSocketPath() { return properties.getProperty("gateway.websocket.path").trim(); }
+    public int getAdmissionMaxInFlight() { return Integer.parseInt(properties.getProperty("gateway.admission.max.inflight")); }
+    public int getAdmissionMaxQueued() { return Integer.parseInt(properties.getProperty("gateway.admission.max.queued")); }
+    public long getAdmissionQueueTimeoutMs() { return Long.parseLong(properties.getProperty("gateway.admission.queue.timeout.ms")); }
+    public long getAdmissionRetryAfterSeconds() { return Long.parseLong(properties.getProperty("gateway.admission.retry.after.s")); }
+    public int getBatchMaxCalls() { return Integer.parseInt(properties.getProperty("gateway.batch.max.calls")); }
+    public int getBatchParallelism() { return Integer.parseInt(properties.getProperty("gateway.batch.parallelism")); }
+    public boolean isCompressionEnabled() { return Boolean.parseBoolean(properties.getProperty("gateway.compression.enabled")); }
+    public int getCompressionMinBytes() { return Integer.parseInt(properties.getProperty("gateway.compression.min.bytes")); }
+    public int getCompressionLevel() { return Integer.parseInt(properties.getProperty("gateway.compression.level")); }
+    
+    public String getInvokerStrategy() { return properties.getProperty("invoker.strategy"); }
+    public String getMarshallers() { return properties.getProperty("remoting.marshallers"); }
+    public long getCacheMaxBytes() { return Long.parseLong(properties.getProperty("cache.max.bytes")); }
+    public boolean isConcurrencyLimiterEnabled() { return Boolean.parseBoolean(properties.getProperty("broker.limiter.enabled")); }
+    public int getLimiterInitial() { return Integer.parseInt(properties.getProperty("broker.limiter.initial")); }
+    public int getLimiterMin() { return Integer.parseInt(properties.getProperty("broker.limiter.min")); }
+    public int getLimiterMax() { return Integer.parseInt(properties.getProperty("broker.limiter.max")); }
+    public boolean isLocalCopyArguments() { return Boolean.parseBoolean(properties.getProperty("local.copy.arguments")); }
+    
     public boolean isAsyncEnabled() { return Boolean.parseBoolean(properties.getProperty("async.enabled")); }
     public int getAsyncPoolSize() { return Integer.parseInt(properties.getProperty("async.poolsize")); }
     public long getAsyncTimeout() { return Long.parseLong(properties.getProperty("async.timeout.ms")); }
     
+    public boolean isVirtualThreadsEnabled() { return "virtual".equalsIgnoreCase(properties.getProperty("threads.mode")); }
+    public long getPinningThresholdMs() { return Long.parseLong(properties.getProperty("threads.virtual.pinning.threshold.ms")); }
+    
     public int getAsyncThreadPoolSize() { return Integer.parseInt(properties.getProperty("async.threadpool.size")); }
     public int getUdpThreadPoolSize() { return Integer.parseInt(properties.getProperty("udp.threadpool.size")); }
     public int getTcpThreadPoolSize() { return Integer.parseInt(properties.getProperty("tcp.threadpool.size")); }
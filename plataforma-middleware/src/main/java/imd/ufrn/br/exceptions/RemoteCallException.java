@@ -0,0 +1,29 @@
+package imd.ufrn.br.exceptions;
+
+/**
+ * A call that reached the middleware and was answered with an error status, such as a 404 for an
+ * unknown route or a 500 for an exception thrown by the service.
+ */
+public class RemoteCallException extends RemotingException {
+
+    private final int statusCode;
+    private final String errorType;
+
+    public RemoteCallException(int statusCode, String errorType, String message) {
+        super("HTTP " + statusCode + (errorType != null ? " " + errorType : "") + ": " + message);
+        this.statusCode = statusCode;
+        this.errorType = errorType;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return the {@code error} field of the response body, such as {@code Not Found}, or null when
+     *         the body did not have one
+     */
+    public String getErrorType() {
+        return errorType;
+    }
+}
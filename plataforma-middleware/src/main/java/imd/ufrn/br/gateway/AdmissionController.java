@@ -0,0 +1,161 @@
+package imd.ufrn.br.gateway;
+
+import imd.ufrn.br.infra.MetricsCollector;
+import imd.ufrn.br.infra.VirtualThreads;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounds the work between the gateway and the Broker. At most {@code maxInFlight} requests are
+ * invoked at a time; up to {@code maxQueued} more wait in FIFO order without holding a thread, and
+ * anything beyond that is rejected immediately. A queued request that is not admitted within
+ * {@code queueTimeoutMs} is dropped before it is invoked, since its client has likely given up.
+ */
+public class AdmissionController {
+
+    private static final CompletableFuture<Void> ADMITTED = CompletableFuture.completedFuture(null);
+
+    private final int maxInFlight;
+    private final int maxQueued;
+    private final long queueTimeoutMs;
+    private final long retryAfterSeconds;
+    private final MetricsCollector metricsCollector;
+    private final Executor resumeExecutor;
+    private final ArrayDeque<CompletableFuture<Void>> queue = new ArrayDeque<>();
+    private final AtomicInteger threadIds = new AtomicInteger();
+    private int inFlight;
+
+    /**
+     * @param virtualThreads resume queued requests on virtual threads rather than a cached pool
+     */
+    public AdmissionController(int maxInFlight, int maxQueued, long queueTimeoutMs, long retryAfterSeconds,
+                               boolean virtualThreads, MetricsCollector metricsCollector) {
+        if (maxInFlight < 1 || maxQueued < 0) {
+            throw new IllegalArgumentException("Admission control needs maxInFlight >= 1 and maxQueued >= 0.");
+        }
+        this.maxInFlight = maxInFlight;
+        this.maxQueued = maxQueued;
+        this.queueTimeoutMs = queueTimeoutMs;
+        this.retryAfterSeconds = retryAfterSeconds;
+        this.metricsCollector = metricsCollector;
+        Executor virtualExecutor = virtualThreads ? VirtualThreads.newPerTaskExecutor("AdmissionController-") : null;
+        this.resumeExecutor = virtualExecutor != null ? virtualExecutor : Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "AdmissionController-" + threadIds.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        if (metricsCollector != null) {
+            metricsCollector.registerGauge("gateway_inflight", () -> inFlight());
+            metricsCollector.registerGauge("gateway_queued", () -> queued());
+        }
+    }
+
+    /**
+     * Asks for a slot. The returned future is already complete when the request may proceed, completes
+     * later once it reaches the head of the queue, or fails with a TimeoutException when its queue
+     * deadline passes first. Returns null when the queue is full and the request must be shed.
+     * Every successful admission must be paired with one {@link #release()}.
+     */
+    public CompletableFuture<Void> acquire() {
+        CompletableFuture<Void> ticket;
+        synchronized (this) {
+            if (inFlight < maxInFlight) {
+                inFlight++;
+                return ADMITTED;
+            }
+            if (queue.size() >= maxQueued) {
+                count("queue_full");
+                return null;
+            }
+            ticket = new CompletableFuture<>();
+            queue.add(ticket);
+        }
+        if (queueTimeoutMs > 0) {
+            ticket.orTimeout(queueTimeoutMs, TimeUnit.MILLISECONDS).whenComplete((ignored, error) -> {
+                if (error != null) {
+                    synchronized (this) {
+                        queue.remove(ticket);
+                    }
+                    if (error instanceof TimeoutException) {
+                        count("queue_timeout");
+                    }
+                }
+            });
+        }
+        return ticket;
+    }
+
+    /**
+     * Frees the slot of a finished request and admits the oldest queued one that is still live. The
+     * admitted request resumes on the controller's executor, so the finishing request's thread can go
+     * on to send its own response.
+     */
+    public void release() {
+        CompletableFuture<Void> next;
+        synchronized (this) {
+            inFlight--;
+            next = nextAdmitted();
+        }
+        if (next != null) {
+            resumeExecutor.execute(() -> {
+                if (!next.complete(null)) {
+                    // Its deadline passed after it was taken off the queue
+                    release();
+                }
+            });
+        }
+    }
+
+    /**
+     * Gives up a slot obtained from {@link #acquire()} for a request that will not be invoked after
+     * all. A ticket still waiting is cancelled; one that was already admitted releases its slot.
+     */
+    public void abandon(CompletableFuture<Void> ticket) {
+        if (!ticket.cancel(false) && !ticket.isCompletedExceptionally()) {
+            release();
+        }
+    }
+
+    public GatewayResponse overloaded(String message) {
+        return GatewayResponse.error(503, "Service Unavailable", message)
+                .withHeader("Retry-After", String.valueOf(retryAfterSeconds));
+    }
+
+    public synchronized int inFlight() {
+        return inFlight;
+    }
+
+    public synchronized int queued() {
+        return queue.size();
+    }
+
+    /**
+     * Takes a slot for the oldest waiting ticket that is still live. Tickets that timed out or were
+     * cancelled are skipped; their completion already answered the request. Called holding the lock.
+     */
+    private CompletableFuture<Void> nextAdmitted() {
+        while (inFlight < maxInFlight) {
+            CompletableFuture<Void> next = queue.poll();
+            if (next == null) {
+                return null;
+            }
+            if (!next.isDone()) {
+                inFlight++;
+                return next;
+            }
+        }
+        return null;
+    }
+
+    private void count(String reason) {
+        if (metricsCollector != null) {
+            metricsCollector.incrementCounter("gateway_rejected_total{reason=\"" + reason + "\"}");
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package imd.ufrn.br.gateway;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Client of the {@link BinaryRpcTransport}. One connection is shared by every caller: each call is
+ * written as a frame with a fresh request ID and completes when the response with that ID arrives,
+ * so any number of calls can be outstanding at once and a slow one does not delay the others. A
+ * single reader thread receives the responses.
+ */
+public class BinaryRpcClient implements AutoCloseable {
+
+    /**
+     * @param contentType media type of {@code body}; error responses are always JSON
+     */
+    public record Response(int statusCode, String contentType, byte[] body) {
+        public String bodyAsString() {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+
+    private final SocketChannel channel;
+    private final DataInputStream in;
+    private final Map<Integer, CompletableFuture<Response>> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final Object writeLock = new Object();
+    private final Thread reader;
+    private volatile boolean closed = false;
+
+    private BinaryRpcClient(SocketChannel channel) {
+        this.channel = channel;
+        this.in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 16 * 1024));
+        this.reader = new Thread(this::readResponses, "BinaryRpcClient-reader");
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    public static BinaryRpcClient connect(String host, int port) throws IOException {
+        return connect(new InetSocketAddress(host, port));
+    }
+
+    /**
+     * Connects to a transport listening on a Unix domain socket on this host.
+     */
+    public static BinaryRpcClient connect(Path socketPath) throws IOException {
+        return connect(UnixDomainSocketAddress.of(socketPath));
+    }
+
+    public static BinaryRpcClient connect(SocketAddress address) throws IOException {
+        SocketChannel channel = SocketChannel.open(address);
+        if (address instanceof InetSocketAddress) {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        }
+        return new BinaryRpcClient(channel);
+    }
+
+    /**
+     * Calls a route with a JSON body.
+     */
+    public CompletableFuture<Response> call(String verb, String path, String jsonBody) {
+        return call(verb, path, null, jsonBody == null ? new byte[0] : jsonBody.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param contentType format of {@code body}, and of the result, such as {@code application/cbor};
+     *                    null for JSON
+     */
+    public CompletableFuture<Response> call(String verb, String path, String contentType, byte[] body) {
+        CompletableFuture<Response> response = new CompletableFuture<>();
+        if (closed) {
+            response.completeExceptionally(new IOException("Client is closed"));
+            return response;
+        }
+        int id = nextId.incrementAndGet();
+        pending.put(id, response);
+        if (closed && pending.remove(id) != null) {
+            // The reader stopped, and failed the pending calls, after the check above
+            response.completeExceptionally(new IOException("Connection is closed"));
+            return response;
+        }
+        ByteBuffer[] frame = {BinaryRpcProtocol.requestHeader(id, verb, path, contentType, body.length), ByteBuffer.wrap(body)};
+        try {
+            synchronized (writeLock) {
+                while (frame[0].hasRemaining() || frame[1].hasRemaining()) {
+                    channel.write(frame);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            pending.remove(id);
+            response.completeExceptionally(e);
+        }
+        return response;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        channel.close();
+        failPending(new IOException("Client is closed"));
+    }
+
+    private void readResponses() {
+        try {
+            while (!closed) {
+                int length = in.readInt();
+                byte[] frame = new byte[length];
+                in.readFully(frame);
+                BinaryRpcProtocol.ResponseFrame response = BinaryRpcProtocol.readResponse(ByteBuffer.wrap(frame));
+                CompletableFuture<Response> call = pending.remove(response.id());
+                if (call != null) {
+                    call.complete(new Response(response.statusCode(), response.contentType(), response.body()));
+                }
+            }
+        } catch (EOFException e) {
+            closed = true;
+            failPending(new IOException("Connection closed by the server"));
+        } catch (IOException | RuntimeException e) {
+            closed = true;
+            failPending(e);
+        }
+    }
+
+    private void failPending(Exception error) {
+        for (Integer id : pending.keySet()) {
+            CompletableFuture<Response> call = pending.remove(id);
+            if (call != null) {
+                call.completeExceptionally(error);
+            }
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package imd.ufrn.br.gateway;
+
+import imd.ufrn.br.infra.BufferPool;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * State of one binary RPC connection on an event loop. Request frames are parsed and handed to the
+ * worker pool as soon as they arrive; responses are queued for writing in the order their calls
+ * complete. Once {@link #MAX_IN_FLIGHT} calls are running, reading pauses until one of them is
+ * answered. A malformed or oversized frame closes the connection, since the stream cannot be
+ * resynchronized after it.
+ */
+final class BinaryRpcConnection implements NioEventLoop.Handler {
+
+    static final int MAX_IN_FLIGHT = 256;
+
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+
+    private final BinaryRpcTransport transport;
+    private final NioEventLoop loop;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final ArrayDeque<ByteBuffer> pendingWrites = new ArrayDeque<>();
+    private final ArrayDeque<byte[]> pooledChunks = new ArrayDeque<>();
+
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private int inFlight;
+    private boolean closed = false;
+    private long lastActivity = System.currentTimeMillis();
+
+    /**
+     * A response frame ready to be written; {@code pooledChunks} go back to the {@link BufferPool}
+     * once it has been.
+     */
+    record EncodedFrame(List<ByteBuffer> buffers, List<byte[]> pooledChunks) {
+        long size() {
+            return buffers.stream().mapToLong(ByteBuffer::remaining).sum();
+        }
+
+        void release() {
+            pooledChunks.forEach(BufferPool.shared()::release);
+        }
+    }
+
+    BinaryRpcConnection(BinaryRpcTransport transport, NioEventLoop loop, SocketChannel channel, SelectionKey key) {
+        this.transport = transport;
+        this.loop = loop;
+        this.channel = channel;
+        this.key = key;
+    }
+
+    @Override
+    public void onReadable() {
+        try {
+            if (!readBuffer.hasRemaining()) {
+                growReadBuffer(readBuffer.capacity() * 2);
+            }
+            int read = channel.read(readBuffer);
+            if (read < 0) {
+                close();
+                return;
+            }
+            lastActivity = System.currentTimeMillis();
+            processFrames();
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    @Override
+    public void onWritable() {
+        try {
+            writePending();
+            updateInterest();
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    @Override
+    public boolean isIdleSince(long threshold) {
+        return inFlight == 0 && pendingWrites.isEmpty() && lastActivity < threshold;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        key.cancel();
+        pendingWrites.clear();
+        pooledChunks.forEach(BufferPool.shared()::release);
+        pooledChunks.clear();
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void processFrames() {
+        while (!closed && inFlight < MAX_IN_FLIGHT) {
+            BinaryRpcProtocol.RequestFrame frame;
+            try {
+                frame = parseFrame();
+            } catch (IllegalArgumentException | BufferUnderflowException e) {
+                System.err.println("BinaryRpcTransport: Malformed frame, closing connection - " + e.getMessage());
+                close();
+                return;
+            }
+            if (frame == null) {
+                break;
+            }
+            dispatch(frame);
+        }
+        updateInterest();
+    }
+
+    /**
+     * Takes one complete frame off the front of the read buffer, or returns null when more bytes are
+     * needed.
+     */
+    private BinaryRpcProtocol.RequestFrame parseFrame() {
+        int available = readBuffer.position();
+        if (available < BinaryRpcProtocol.LENGTH_BYTES) {
+            return null;
+        }
+        int length = readBuffer.getInt(0);
+        if (length < 0 || length > transport.maxFrameBytes()) {
+            throw new IllegalArgumentException("Frame of " + length + " bytes exceeds " + transport.maxFrameBytes());
+        }
+        int total = BinaryRpcProtocol.LENGTH_BYTES + length;
+        if (available < total) {
+            if (readBuffer.capacity() < total) {
+                growReadBuffer(total);
+            }
+            return null;
+        }
+        ByteBuffer frame = ByteBuffer.wrap(readBuffer.array(), BinaryRpcProtocol.LENGTH_BYTES, length);
+        BinaryRpcProtocol.RequestFrame request = BinaryRpcProtocol.readRequest(frame.slice());
+        consume(total);
+        return request;
+    }
+
+    private void dispatch(BinaryRpcProtocol.RequestFrame frame) {
+        inFlight++;
+        try {
+            transport.workers().execute(() -> invoke(transport.dispatcher(), transport.workers(), frame)
+                    .thenAccept(encoded -> loop.execute(() -> finish(encoded))));
+        } catch (RejectedExecutionException e) {
+            close();
+        }
+    }
+
+    /**
+     * Dispatches one call and encodes its response frame on the thread that completes it. Streamed
+     * results are written out in full into the frame, on a worker, as a frame needs its length up front.
+     */
+    static CompletableFuture<EncodedFrame> invoke(GatewayDispatcher dispatcher, Executor workers,
+                                                  BinaryRpcProtocol.RequestFrame frame) {
+        CompletableFuture<GatewayResponse> response;
+        try {
+            response = dispatcher.dispatch(frame.verb(), frame.path(), new ByteArrayInputStream(frame.body()),
+                    frame.contentType(), frame.contentType());
+        } catch (RuntimeException e) {
+            response = CompletableFuture.completedFuture(
+                    GatewayResponse.error(500, "Internal Server Error", "Gateway error: " + e.getMessage()));
+        }
+        return response.thenCompose(result -> result.chunked()
+                ? CompletableFuture.supplyAsync(() -> encode(frame.id(), result), workers)
+                : CompletableFuture.completedFuture(encode(frame.id(), result)))
+                .exceptionally(error -> encode(frame.id(),
+                        GatewayResponse.error(500, "Internal Server Error", "Gateway error: " + error.getMessage())));
+    }
+
+    static EncodedFrame encode(int id, GatewayResponse response) {
+        List<ByteBuffer> body;
+        List<byte[]> pooled = List.of();
+        long length;
+        if (response.isStreamed()) {
+            BufferChainOutputStream out = new BufferChainOutputStream();
+            try {
+                response.bodyWriter().writeTo(out);
+            } catch (IOException | RuntimeException e) {
+                out.release();
+                System.err.println("BinaryRpcTransport: Error writing response - " + e.getMessage());
+                return encode(id, GatewayResponse.error(500, "Internal Server Error", "Gateway error: " + e.getMessage()));
+            }
+            body = out.toBuffers();
+            pooled = out.chunks();
+            length = out.size();
+        } else {
+            body = List.of(ByteBuffer.wrap(response.body()));
+            length = response.body().length;
+        }
+        List<ByteBuffer> buffers = new ArrayList<>(body.size() + 1);
+        buffers.add(BinaryRpcProtocol.responseHeader(id, response.statusCode(), response.contentType(), length));
+        buffers.addAll(body);
+        return new EncodedFrame(buffers, pooled);
+    }
+
+    private void finish(EncodedFrame frame) {
+        inFlight--;
+        if (closed) {
+            frame.release();
+            return;
+        }
+        pendingWrites.addAll(frame.buffers());
+        pooledChunks.addAll(frame.pooledChunks());
+        try {
+            writePending();
+            processFrames();
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    private void writePending() throws IOException {
+        if (pendingWrites.isEmpty()) {
+            return;
+        }
+        channel.write(pendingWrites.toArray(new ByteBuffer[0]));
+        while (!pendingWrites.isEmpty() && !pendingWrites.peek().hasRemaining()) {
+            ByteBuffer written = pendingWrites.poll();
+            if (!pooledChunks.isEmpty() && written.array() == pooledChunks.peek()) {
+                BufferPool.shared().release(pooledChunks.poll());
+            }
+        }
+        lastActivity = System.currentTimeMillis();
+    }
+
+    private void updateInterest() {
+        if (closed) {
+            return;
+        }
+        int ops = 0;
+        if (!pendingWrites.isEmpty()) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        if (inFlight < MAX_IN_FLIGHT) {
+            ops |= SelectionKey.OP_READ;
+        }
+        key.interestOps(ops);
+    }
+
+    private void consume(int length) {
+        readBuffer.flip();
+        readBuffer.position(length);
+        if (readBuffer.capacity() > INITIAL_BUFFER_SIZE && readBuffer.remaining() <= INITIAL_BUFFER_SIZE) {
+            ByteBuffer shrunk = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+            shrunk.put(readBuffer);
+            readBuffer = shrunk;
+        } else {
+            readBuffer.compact();
+        }
+    }
+
+    private void growReadBuffer(int minCapacity) {
+        int capacity = Math.min(Math.max(minCapacity, readBuffer.capacity() * 2),
+                transport.maxFrameBytes() + BinaryRpcProtocol.LENGTH_BYTES);
+        if (capacity <= readBuffer.capacity()) {
+            return;
+        }
+        ByteBuffer grown = ByteBuffer.allocate(capacity);
+        readBuffer.flip();
+        grown.put(readBuffer);
+        readBuffer = grown;
+    }
+}
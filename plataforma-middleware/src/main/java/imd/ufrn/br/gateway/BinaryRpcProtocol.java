@@ -0,0 +1,130 @@
+package imd.ufrn.br.gateway;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Frames of the binary RPC transport. Each frame starts with its length as a big-endian int, not
+ * counting the length field itself, followed by the ID of the request, which its response echoes so
+ * that calls multiplexed over one connection can be answered in any order:
+ * <pre>
+ * request:  length | id | verb (u8 length, ASCII) | path (u16 length, UTF-8) | content type (u8 length, ASCII) | body
+ * response: length | id | status (u16)           | content type (u8 length, ASCII)                           | body
+ * </pre>
+ * An empty content type means JSON. The body is the same parameter array, or result, an HTTP request
+ * to the route would carry. A one-way datagram is a request frame without the length and ID, since
+ * the datagram bounds it and nothing answers it:
+ * <pre>
+ * datagram: verb (u8 length, ASCII) | path (u16 length, UTF-8) | content type (u8 length, ASCII) | body
+ * </pre>
+ */
+final class BinaryRpcProtocol {
+
+    static final int LENGTH_BYTES = 4;
+
+    record RequestFrame(int id, String verb, String path, String contentType, byte[] body) {}
+
+    record ResponseFrame(int id, int statusCode, String contentType, byte[] body) {}
+
+    private BinaryRpcProtocol() {
+    }
+
+    static ByteBuffer requestHeader(int id, String verb, String path, String contentType, int bodyLength) {
+        byte[] verbBytes = ascii(verb, 0xff);
+        byte[] pathBytes = utf8Path(path);
+        byte[] typeBytes = ascii(contentType, 0xff);
+        int length = 4 + 1 + verbBytes.length + 2 + pathBytes.length + 1 + typeBytes.length + bodyLength;
+        ByteBuffer header = ByteBuffer.allocate(LENGTH_BYTES + length - bodyLength);
+        header.putInt(length).putInt(id);
+        putCall(header, verbBytes, pathBytes, typeBytes);
+        return header.flip();
+    }
+
+    static ByteBuffer datagram(String verb, String path, String contentType, byte[] body) {
+        byte[] verbBytes = ascii(verb, 0xff);
+        byte[] pathBytes = utf8Path(path);
+        byte[] typeBytes = ascii(contentType, 0xff);
+        ByteBuffer datagram = ByteBuffer.allocate(1 + verbBytes.length + 2 + pathBytes.length + 1 + typeBytes.length + body.length);
+        putCall(datagram, verbBytes, pathBytes, typeBytes);
+        return datagram.put(body).flip();
+    }
+
+    static ByteBuffer responseHeader(int id, int statusCode, String contentType, long bodyLength) {
+        byte[] typeBytes = ascii(contentType, 0xff);
+        long length = 4 + 2 + 1 + typeBytes.length + bodyLength;
+        if (length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Response body of " + bodyLength + " bytes does not fit in a frame");
+        }
+        ByteBuffer header = ByteBuffer.allocate(LENGTH_BYTES + (int) (length - bodyLength));
+        header.putInt((int) length).putInt(id).putShort((short) statusCode);
+        header.put((byte) typeBytes.length).put(typeBytes);
+        return header.flip();
+    }
+
+    /**
+     * @param frame the frame after its length field, limited to its end
+     */
+    static RequestFrame readRequest(ByteBuffer frame) {
+        return readCall(frame, frame.getInt());
+    }
+
+    /**
+     * @param datagram a one-way datagram; the frame it yields has ID 0
+     */
+    static RequestFrame readDatagram(ByteBuffer datagram) {
+        return readCall(datagram, 0);
+    }
+
+    private static RequestFrame readCall(ByteBuffer frame, int id) {
+        String verb = readString(frame, frame.get() & 0xff, StandardCharsets.US_ASCII);
+        String path = readString(frame, frame.getShort() & 0xffff, StandardCharsets.UTF_8);
+        String contentType = readString(frame, frame.get() & 0xff, StandardCharsets.US_ASCII);
+        byte[] body = new byte[frame.remaining()];
+        frame.get(body);
+        return new RequestFrame(id, verb, path, contentType.isEmpty() ? null : contentType, body);
+    }
+
+    /**
+     * @param frame the frame after its length field, limited to its end
+     */
+    static ResponseFrame readResponse(ByteBuffer frame) {
+        int id = frame.getInt();
+        int statusCode = frame.getShort() & 0xffff;
+        String contentType = readString(frame, frame.get() & 0xff, StandardCharsets.US_ASCII);
+        byte[] body = new byte[frame.remaining()];
+        frame.get(body);
+        return new ResponseFrame(id, statusCode, contentType, body);
+    }
+
+    private static void putCall(ByteBuffer target, byte[] verbBytes, byte[] pathBytes, byte[] typeBytes) {
+        target.put((byte) verbBytes.length).put(verbBytes);
+        target.putShort((short) pathBytes.length).put(pathBytes);
+        target.put((byte) typeBytes.length).put(typeBytes);
+    }
+
+    private static byte[] utf8Path(String path) {
+        byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+        if (pathBytes.length > 0xffff) {
+            throw new IllegalArgumentException("Path is longer than 65535 bytes");
+        }
+        return pathBytes;
+    }
+
+    private static String readString(ByteBuffer frame, int length, Charset charset) {
+        if (length > frame.remaining()) {
+            throw new IllegalArgumentException("Frame ends inside a " + length + "-byte field");
+        }
+        String value = new String(frame.array(), frame.arrayOffset() + frame.position(), length, charset);
+        frame.position(frame.position() + length);
+        return value;
+    }
+
+    private static byte[] ascii(String value, int maxLength) {
+        byte[] bytes = value == null ? new byte[0] : value.getBytes(StandardCharsets.US_ASCII);
+        if (bytes.length > maxLength) {
+            throw new IllegalArgumentException("'" + value + "' is longer than " + maxLength + " bytes");
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,171 @@
+package imd.ufrn.br.gateway;
+
+import imd.ufrn.br.infra.VirtualThreads;
+import imd.ufrn.br.lifecycle.Lifecycle;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Length-prefixed binary RPC for internal callers, served next to the HTTP gateway. Frames (see
+ * {@link BinaryRpcProtocol}) name the verb and path of a route and carry its body, so calls go
+ * through the same {@link GatewayDispatcher}, RouteRegistry and Broker as HTTP requests, without
+ * any HTTP parsing. Every request carries an ID: a connection keeps reading while earlier calls
+ * are still running and each response goes out as soon as its call completes, in whatever order
+ * that is, so one connection carries many concurrent calls. Up to
+ * {@link BinaryRpcConnection#MAX_IN_FLIGHT} calls run per connection before reading pauses.
+ * <p>
+ * Connections are multiplexed over NIO event loops as in {@link NioHttpGateway}; calls always run on
+ * the worker pool (or on virtual threads) so that a slow call does not hold up the others.
+ * <p>
+ * Besides a TCP port, the transport can listen on a {@link UnixDomainSocketAddress}, so that callers
+ * on the same host skip the TCP/IP stack. A socket file left behind by an earlier run is replaced,
+ * and the file is removed again on {@link #stop()}.
+ *
+ * @see BinaryRpcClient
+ */
+public class BinaryRpcTransport implements Lifecycle {
+
+    private final GatewayDispatcher dispatcher;
+    private final int eventLoopCount;
+    private final int workerThreads;
+    private final long idleTimeoutMs;
+    private final int maxFrameBytes;
+    private final boolean virtualThreads;
+
+    private ServerSocketChannel serverChannel;
+    private SocketAddress boundAddress;
+    private NioEventLoop[] eventLoops;
+    private ExecutorService workers;
+    private Thread acceptorThread;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private volatile boolean running = false;
+
+    /**
+     * @param eventLoopCount selector threads, 0 for one per core
+     * @param workerThreads  size of the pool calls run on, unless {@code virtualThreads} is set
+     * @param maxFrameBytes  largest request frame accepted; a larger one closes the connection
+     */
+    public BinaryRpcTransport(GatewayDispatcher dispatcher, int eventLoopCount, int workerThreads, long idleTimeoutMs,
+                              int maxFrameBytes, boolean virtualThreads) {
+        this.dispatcher = dispatcher;
+        this.eventLoopCount = eventLoopCount > 0 ? eventLoopCount : Runtime.getRuntime().availableProcessors();
+        this.workerThreads = Math.max(1, workerThreads);
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.maxFrameBytes = maxFrameBytes;
+        this.virtualThreads = virtualThreads;
+    }
+
+    public void start(int port) throws IOException {
+        start(new InetSocketAddress(port));
+    }
+
+    public void start(SocketAddress address) throws IOException {
+        if (running) {
+            return;
+        }
+        workers = virtualThreads ? VirtualThreads.newPerTaskExecutor("BinaryRpcTransport-worker-") : null;
+        if (workers == null) {
+            AtomicInteger workerIds = new AtomicInteger();
+            workers = Executors.newFixedThreadPool(workerThreads, r -> {
+                Thread t = new Thread(r, "BinaryRpcTransport-worker-" + workerIds.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        eventLoops = new NioEventLoop[eventLoopCount];
+        for (int i = 0; i < eventLoopCount; i++) {
+            eventLoops[i] = new NioEventLoop("BinaryRpcTransport-loop-" + i, idleTimeoutMs,
+                    (loop, channel, key) -> new BinaryRpcConnection(this, loop, channel, key));
+            eventLoops[i].start();
+        }
+
+        if (address instanceof UnixDomainSocketAddress unixAddress) {
+            Files.deleteIfExists(unixAddress.getPath());
+            serverChannel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        }
+        serverChannel.bind(address, 1024);
+        boundAddress = address;
+
+        running = true;
+        acceptorThread = new Thread(this::acceptLoop, "BinaryRpcTransport-acceptor");
+        acceptorThread.setDaemon(true);
+        acceptorThread.start();
+    }
+
+    @Override
+    public void start() throws Exception {
+        start(8085);
+    }
+
+    @Override
+    public void stop() throws Exception {
+        if (!running) {
+            return;
+        }
+        running = false;
+        serverChannel.close();
+        if (boundAddress instanceof UnixDomainSocketAddress unixAddress) {
+            Files.deleteIfExists(unixAddress.getPath());
+        }
+        for (NioEventLoop loop : eventLoops) {
+            loop.shutdown();
+        }
+        workers.shutdown();
+        if (!workers.awaitTermination(5, TimeUnit.SECONDS)) {
+            workers.shutdownNow();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                if (!(boundAddress instanceof UnixDomainSocketAddress)) {
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                }
+                NioEventLoop loop = eventLoops[Math.floorMod(nextLoop.getAndIncrement(), eventLoops.length)];
+                loop.register(channel);
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("BinaryRpcTransport: Error accepting connection - " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    GatewayDispatcher dispatcher() {
+        return dispatcher;
+    }
+
+    ExecutorService workers() {
+        return workers;
+    }
+
+    int maxFrameBytes() {
+        return maxFrameBytes;
+    }
+}
@@ -0,0 +1,77 @@
+package imd.ufrn.br.gateway;
+
+import imd.ufrn.br.infra.BufferPool;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects a response body as a chain of pooled chunks that the NIO engine can hand to a gathering
+ * write as-is, so the serialized bytes are never copied into one contiguous array.
+ */
+final class BufferChainOutputStream extends OutputStream {
+
+    private final List<byte[]> chunks = new ArrayList<>();
+    private byte[] current;
+    private int position;
+    private long size;
+
+    @Override
+    public void write(int b) {
+        ensureCapacity();
+        current[position++] = (byte) b;
+        size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        while (len > 0) {
+            ensureCapacity();
+            int n = Math.min(len, current.length - position);
+            System.arraycopy(b, off, current, position, n);
+            position += n;
+            off += n;
+            len -= n;
+            size += n;
+        }
+    }
+
+    long size() {
+        return size;
+    }
+
+    /**
+     * The pooled arrays backing {@link #toBuffers()}; they go back to the pool once written.
+     */
+    List<byte[]> chunks() {
+        return chunks;
+    }
+
+    List<ByteBuffer> toBuffers() {
+        List<ByteBuffer> buffers = new ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            byte[] chunk = chunks.get(i);
+            int length = i == chunks.size() - 1 ? position : chunk.length;
+            buffers.add(ByteBuffer.wrap(chunk, 0, length));
+        }
+        return buffers;
+    }
+
+    void release() {
+        for (byte[] chunk : chunks) {
+            BufferPool.shared().release(chunk);
+        }
+        chunks.clear();
+        current = null;
+    }
+
+    private void ensureCapacity() {
+        if (current == null || position == current.length) {
+            current = BufferPool.shared().acquire();
+            chunks.add(current);
+            position = 0;
+        }
+    }
+}
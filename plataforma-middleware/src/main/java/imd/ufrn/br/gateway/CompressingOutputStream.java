@@ -0,0 +1,138 @@
+package imd.ufrn.br.gateway;
+
+import imd.ufrn.br.infra.BufferPool;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses a response body into gzip or zlib ("deflate") format with a Deflater borrowed from the
+ * {@link ResponseCompressor}. Unlike GZIPOutputStream it does not allocate a Deflater of its own,
+ * and a flush is a sync flush, so a streamed body reaches the client as it is produced. The Deflater
+ * goes back to the pool once the body is finished.
+ */
+public final class CompressingOutputStream extends OutputStream {
+
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final ResponseCompressor compressor;
+    private final OutputStream out;
+    private final String encoding;
+    private final boolean gzip;
+    private final Deflater deflater;
+    private final CRC32 crc;
+    private final byte[] single = new byte[1];
+    private byte[] buffer;
+    private long bytesIn;
+    private long bytesOut;
+    private long nanos;
+    private boolean finished;
+
+    CompressingOutputStream(ResponseCompressor compressor, OutputStream out, String encoding) {
+        this.compressor = compressor;
+        this.out = out;
+        this.encoding = encoding;
+        this.gzip = ResponseCompressor.GZIP.equals(encoding);
+        this.deflater = compressor.acquireDeflater(gzip);
+        this.crc = gzip ? new CRC32() : null;
+        this.buffer = BufferPool.shared().acquire();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        single[0] = (byte) b;
+        write(single, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (finished) {
+            throw new IOException("Compressed body already finished");
+        }
+        if (len == 0) {
+            return;
+        }
+        writeHeader();
+        long start = ResponseCompressor.cpuTime();
+        if (crc != null) {
+            crc.update(b, off, len);
+        }
+        deflater.setInput(b, off, len);
+        while (!deflater.needsInput()) {
+            deflate(Deflater.NO_FLUSH);
+        }
+        bytesIn += len;
+        nanos += ResponseCompressor.cpuTime() - start;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (!finished && bytesIn > 0) {
+            long start = ResponseCompressor.cpuTime();
+            while (deflate(Deflater.SYNC_FLUSH) == buffer.length) {
+                // A full buffer may mean more output is pending
+            }
+            nanos += ResponseCompressor.cpuTime() - start;
+        }
+        out.flush();
+    }
+
+    /**
+     * Completes the compressed body without closing the underlying stream.
+     */
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        writeHeader();
+        long start = ResponseCompressor.cpuTime();
+        deflater.finish();
+        while (!deflater.finished()) {
+            deflate(Deflater.NO_FLUSH);
+        }
+        if (crc != null) {
+            byte[] trailer = new byte[8];
+            writeIntLE(trailer, 0, (int) crc.getValue());
+            writeIntLE(trailer, 4, (int) bytesIn);
+            out.write(trailer);
+            bytesOut += trailer.length;
+        }
+        nanos += ResponseCompressor.cpuTime() - start;
+        finished = true;
+        compressor.releaseDeflater(deflater, gzip);
+        BufferPool.shared().release(buffer);
+        buffer = null;
+        compressor.record(encoding, bytesIn, bytesOut, nanos);
+    }
+
+    @Override
+    public void close() throws IOException {
+        finish();
+        out.close();
+    }
+
+    private void writeHeader() throws IOException {
+        if (gzip && bytesOut == 0) {
+            out.write(GZIP_HEADER);
+            bytesOut += GZIP_HEADER.length;
+        }
+    }
+
+    private int deflate(int flushMode) throws IOException {
+        int n = deflater.deflate(buffer, 0, buffer.length, flushMode);
+        if (n > 0) {
+            out.write(buffer, 0, n);
+            bytesOut += n;
+        }
+        return n;
+    }
+
+    private static void writeIntLE(byte[] target, int offset, int value) {
+        target[offset] = (byte) value;
+        target[offset + 1] = (byte) (value >>> 8);
+        target[offset + 2] = (byte) (value >>> 16);
+        target[offset + 3] = (byte) (value >>> 24);
+    }
+}
@@ -0,0 +1,128 @@
+package imd.ufrn.br.gateway;
+
+import com.sun.net.httpserver.HttpExchange;
+import imd.ufrn.br.infra.BufferPool;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Response body stream for the JDK engine. Output is collected in a pooled buffer so that bodies
+ * which fit are sent with a fixed Content-Length; larger bodies switch to chunked transfer and are
+ * streamed to the exchange as they are produced. Until the first byte is sent the response can still
+ * be {@link #discard() discarded} and replaced by an error. For chunked responses a flush commits
+ * the response and pushes what has been written so far to the client. With a compressor, a body
+ * that reaches the compressor's threshold is sent compressed; one that turns out smaller is not.
+ */
+final class ExchangeOutputStream extends OutputStream {
+
+    private final HttpExchange exchange;
+    private final int statusCode;
+    private final boolean chunked;
+    private final ResponseCompressor compressor;
+    private final String encoding;
+    private byte[] buffer;
+    private int count;
+    private OutputStream direct;
+    private boolean closed;
+
+    /**
+     * @param compressor compresses the body with {@code encoding}, or null to send it as written
+     */
+    ExchangeOutputStream(HttpExchange exchange, int statusCode, boolean chunked, ResponseCompressor compressor,
+                         String encoding) {
+        this.exchange = exchange;
+        this.statusCode = statusCode;
+        this.chunked = chunked;
+        this.compressor = compressor;
+        this.encoding = encoding;
+        this.buffer = BufferPool.shared().acquire();
+    }
+
+    boolean isCommitted() {
+        return direct != null;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (direct == null && count == buffer.length) {
+            commitChunked();
+        }
+        if (direct != null) {
+            direct.write(b);
+        } else {
+            buffer[count++] = (byte) b;
+        }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (direct == null && len > buffer.length - count) {
+            commitChunked();
+        }
+        if (direct != null) {
+            direct.write(b, off, len);
+        } else {
+            System.arraycopy(b, off, buffer, count, len);
+            count += len;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (!chunked || closed) {
+            return;
+        }
+        if (direct == null) {
+            commitChunked();
+        }
+        direct.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (direct == null && compressor != null && count >= compressor.minBytes()) {
+                byte[] compressed = compressor.compress(buffer, 0, count, encoding);
+                exchange.getResponseHeaders().set("Content-Encoding", encoding);
+                exchange.sendResponseHeaders(statusCode, compressed.length);
+                direct = exchange.getResponseBody();
+                direct.write(compressed);
+            } else if (direct == null) {
+                exchange.sendResponseHeaders(statusCode, count == 0 ? -1 : count);
+                direct = exchange.getResponseBody();
+                direct.write(buffer, 0, count);
+            }
+            direct.close();
+        } finally {
+            releaseBuffer();
+        }
+    }
+
+    void discard() {
+        closed = true;
+        releaseBuffer();
+    }
+
+    private void commitChunked() throws IOException {
+        if (compressor != null) {
+            exchange.getResponseHeaders().set("Content-Encoding", encoding);
+        }
+        exchange.sendResponseHeaders(statusCode, 0);
+        direct = compressor != null ? compressor.compressing(exchange.getResponseBody(), encoding) : exchange.getResponseBody();
+        direct.write(buffer, 0, count);
+        count = 0;
+        releaseBuffer();
+    }
+
+    private void releaseBuffer() {
+        if (buffer != null) {
+            BufferPool.shared().release(buffer);
+            buffer = null;
+        }
+    }
+}
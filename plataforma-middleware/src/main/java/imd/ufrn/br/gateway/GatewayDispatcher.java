@@ -0,0 +1,394 @@
+package imd.ufrn.br.gateway;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import imd.ufrn.br.annotations.HttpVerb;
+import imd.ufrn.br.broker.Broker;
+import imd.ufrn.br.infra.VirtualThreads;
+import imd.ufrn.br.registry.RouteInfo;
+import imd.ufrn.br.registry.RouteMatch;
+import imd.ufrn.br.registry.RouteRegistry;
+import imd.ufrn.br.remoting.JsonMarshaller;
+import imd.ufrn.br.remoting.Marshaller;
+import imd.ufrn.br.remoting.MarshallerRegistry;
+import imd.ufrn.br.remoting.Request;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Maps an HTTP request onto the RouteRegistry/Broker path. Shared by every gateway engine so that
+ * the JDK server and the NIO event-loop server behave identically.
+ */
+public class GatewayDispatcher {
+
+    public static final String BATCH_PATH = "/batch";
+
+    private static final ObjectMapper BATCH_MAPPER = new ObjectMapper();
+    private static final byte[] NO_PARAMS = "[]".getBytes(StandardCharsets.UTF_8);
+
+    private final RouteRegistry routeRegistry;
+    private final Broker broker;
+    private final AdmissionController admissionController;
+    private final ResponseCache responseCache;
+    private final MarshallerRegistry marshallers = new MarshallerRegistry(new JsonMarshaller());
+    private volatile int batchMaxCalls;
+    private volatile int batchParallelism;
+    private volatile Executor batchExecutor;
+    private volatile ResponseCompressor compressor;
+    private final AtomicInteger batchThreadIds = new AtomicInteger();
+
+    public GatewayDispatcher(RouteRegistry routeRegistry, Broker broker) {
+        this(routeRegistry, broker, null, null);
+    }
+
+    /**
+     * @param admissionController bounds concurrent invocations, or null to admit everything
+     * @param responseCache       serves {@code @Cacheable} routes, or null to invoke every request
+     */
+    public GatewayDispatcher(RouteRegistry routeRegistry, Broker broker, AdmissionController admissionController,
+                             ResponseCache responseCache) {
+        this.routeRegistry = routeRegistry;
+        this.broker = broker;
+        this.admissionController = admissionController;
+        this.responseCache = responseCache;
+    }
+
+    /**
+     * Serves {@code POST /batch}: the body is a JSON array of {@code {"verb", "path", "params"}}
+     * calls, where {@code params} is the array the route would receive as its own body. Each call
+     * goes through the same routing, cache, admission control and Broker path as a separate request,
+     * with at most {@code parallelism} of them running at a time, and the response is an array of
+     * {@code {"status", "body"}} in the order of the calls.
+     *
+     * @param virtualThreads run batch calls on virtual threads rather than a cached pool
+     */
+    public void enableBatch(int maxCalls, int parallelism, boolean virtualThreads) {
+        Executor virtualExecutor = virtualThreads ? VirtualThreads.newPerTaskExecutor("BatchDispatcher-") : null;
+        this.batchExecutor = virtualExecutor != null ? virtualExecutor : Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "BatchDispatcher-" + batchThreadIds.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.batchParallelism = Math.max(1, parallelism);
+        this.batchMaxCalls = maxCalls;
+    }
+
+    /**
+     * Resolves and invokes the route for a request. Parameters are bound directly from {@code body};
+     * the engine must keep it readable until the future completes, since a streamed parameter is
+     * read while the method runs. A successful result is left unserialized, to be written by the
+     * engine into its own output; the future completes on whichever thread finishes the invocation
+     * and never completes exceptionally.
+     * Streaming results come back as {@link GatewayResponse#chunked() chunked} responses.
+     */
+    public CompletableFuture<GatewayResponse> dispatch(String methodStr, String path, InputStream body) {
+        return dispatch(methodStr, path, body, null);
+    }
+
+    /**
+     * @param accept the request's Accept header, or null; streaming routes answer
+     *               {@code application/x-ndjson} with one JSON value per line instead of a JSON array
+     */
+    public CompletableFuture<GatewayResponse> dispatch(String methodStr, String path, InputStream body, String accept) {
+        return dispatch(methodStr, path, body, accept, null);
+    }
+
+    /**
+     * @param contentType the request's Content-Type header, or null; a body in a registered
+     *                    {@link Marshaller}'s format is read with it, anything else as JSON. The
+     *                    result is written in the format {@code accept} prefers, or else in the
+     *                    request's format.
+     */
+    public CompletableFuture<GatewayResponse> dispatch(String methodStr, String path, InputStream body, String accept,
+                                                       String contentType) {
+        if (batchMaxCalls > 0 && path.equals(BATCH_PATH) && methodStr.equalsIgnoreCase("POST")) {
+            return dispatchBatch(body);
+        }
+        return dispatchCall(methodStr, path, body, accept, contentType, false);
+    }
+
+    /**
+     * Invokes a {@link imd.ufrn.br.annotations.OneWay} route for a transport that sends no reply.
+     * Any other route is refused with 403 without being invoked. The returned response only tells
+     * the transport whether the call succeeded.
+     */
+    public CompletableFuture<GatewayResponse> dispatchOneWay(String methodStr, String path, InputStream body,
+                                                             String contentType) {
+        return dispatchCall(methodStr, path, body, null, contentType, true);
+    }
+
+    /**
+     * Lets clients send and receive bodies in {@code marshaller}'s format, chosen by Content-Type and
+     * Accept. JSON is always available.
+     */
+    public void registerMarshaller(Marshaller marshaller) {
+        marshallers.register(marshaller);
+    }
+
+    /**
+     * Lets the engines compress response bodies for clients that accept gzip or deflate.
+     */
+    public void enableCompression(ResponseCompressor compressor) {
+        this.compressor = compressor;
+    }
+
+    /**
+     * @return the compressor engines apply to response bodies, or null when compression is off
+     */
+    public ResponseCompressor compressor() {
+        return compressor;
+    }
+
+    private CompletableFuture<GatewayResponse> dispatchCall(String methodStr, String path, InputStream body, String accept,
+                                                           String contentType, boolean oneWayOnly) {
+        if (path.startsWith("/health")) {
+            return CompletableFuture.completedFuture(handleHealthCheck(path));
+        }
+
+        HttpVerb verb;
+
+        try {
+            verb = HttpVerb.valueOf(methodStr.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.completedFuture(
+                GatewayResponse.error(405, "Method Not Allowed", "HTTP verb '" + methodStr + "' is not supported."));
+        }
+
+        try {
+            RouteMatch match = routeRegistry.match(verb, path);
+
+            if (match == null) {
+                return CompletableFuture.completedFuture(
+                    GatewayResponse.error(404, "Not Found", "No route found for " + verb + " " + path));
+            }
+
+            RouteInfo route = match.route();
+            if (oneWayOnly && !route.isOneWay()) {
+                return CompletableFuture.completedFuture(
+                    GatewayResponse.error(403, "Forbidden", "Route " + verb + " " + path + " is not one-way"));
+            }
+            InputStream requestBody = body;
+            Marshaller requestFormat = marshallers.forContentType(contentType);
+            Marshaller responseFormat = marshallers.forAccept(accept, requestFormat);
+            boolean ndjson = marshallers.isDefault(responseFormat) && accept != null && accept.contains("application/x-ndjson");
+            ResponseCache.Key cacheKey = null;
+            // Cached bodies and their keys are JSON, so binary requests go past the cache
+            if (responseCache != null && route.isCacheable() && marshallers.isDefault(requestFormat)
+                    && marshallers.isDefault(responseFormat)) {
+                byte[] requestBytes = body.readAllBytes();
+                cacheKey = responseCache.keyFor(route, match.pathValues(), requestBytes);
+                byte[] cached = responseCache.get(cacheKey);
+                if (cached != null) {
+                    return CompletableFuture.completedFuture(GatewayResponse.ok(cached));
+                }
+                requestBody = new ByteArrayInputStream(requestBytes);
+            }
+
+            if (admissionController == null) {
+                Object[] params = route.binder().readParameters(requestBody, match.pathValues(), requestFormat);
+                return invoke(route, params, cacheKey, ndjson, responseFormat);
+            }
+
+            CompletableFuture<Void> admission = admissionController.acquire();
+            if (admission == null) {
+                return CompletableFuture.completedFuture(admissionController.overloaded("Server is at capacity"));
+            }
+            Object[] params;
+            try {
+                params = route.binder().readParameters(requestBody, match.pathValues(), requestFormat);
+            } catch (RuntimeException e) {
+                admissionController.abandon(admission);
+                throw e;
+            }
+            ResponseCache.Key admittedKey = cacheKey;
+            return admission.handle((admitted, error) -> error)
+                .thenCompose(error -> {
+                    if (error != null) {
+                        return CompletableFuture.completedFuture(
+                            admissionController.overloaded("Request waited too long to be admitted"));
+                    }
+                    CompletableFuture<GatewayResponse> response = invoke(route, params, admittedKey, ndjson, responseFormat);
+                    response.whenComplete((result, failure) -> admissionController.release());
+                    return response;
+                });
+
+        } catch (Exception e) {
+            System.err.println("HTTPGateway: Error processing request - " + e.getMessage());
+            return CompletableFuture.completedFuture(
+                GatewayResponse.error(500, "Internal Server Error", "Gateway error: " + e.getMessage()));
+        }
+    }
+
+    private CompletableFuture<GatewayResponse> dispatchBatch(InputStream body) {
+        JsonNode calls;
+        try {
+            calls = BATCH_MAPPER.readTree(body);
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.completedFuture(
+                GatewayResponse.error(400, "Bad Request", "Invalid batch JSON: " + e.getOriginalMessage()));
+        } catch (IOException e) {
+            return CompletableFuture.completedFuture(
+                GatewayResponse.error(400, "Bad Request", "Could not read batch body: " + e.getMessage()));
+        }
+        if (calls == null || !calls.isArray()) {
+            return CompletableFuture.completedFuture(
+                GatewayResponse.error(400, "Bad Request", "Batch body must be a JSON array of calls."));
+        }
+        if (calls.size() > batchMaxCalls) {
+            return CompletableFuture.completedFuture(GatewayResponse.error(413, "Payload Too Large",
+                "Batch has " + calls.size() + " calls, the limit is " + batchMaxCalls + "."));
+        }
+        Batch batch = new Batch(calls);
+        for (int i = 0; i < Math.min(batchParallelism, calls.size()); i++) {
+            batch.launch();
+        }
+        return batch.done;
+    }
+
+    /**
+     * Dispatches one call given as {@code {"verb", "path", "params"}}, the form used by batches and by
+     * WebSocket text messages. The result is JSON.
+     */
+    CompletableFuture<GatewayResponse> dispatchJsonCall(JsonNode call) {
+        JsonNode verb = call.get("verb");
+        JsonNode path = call.get("path");
+        if (verb == null || !verb.isTextual() || path == null || !path.isTextual()) {
+            return CompletableFuture.completedFuture(
+                GatewayResponse.error(400, "Bad Request", "Each call needs a 'verb' and a 'path'."));
+        }
+        JsonNode params = call.get("params");
+        byte[] paramsJson;
+        try {
+            paramsJson = params == null || params.isNull() ? NO_PARAMS : BATCH_MAPPER.writeValueAsBytes(params);
+        } catch (IOException e) {
+            return CompletableFuture.completedFuture(
+                GatewayResponse.error(400, "Bad Request", "Invalid call params: " + e.getMessage()));
+        }
+        return dispatchCall(verb.asText(), path.asText(), new ByteArrayInputStream(paramsJson), null, null, false);
+    }
+
+    /**
+     * One batch in progress. Calls run on the batch executor, so they proceed in parallel even when
+     * the Broker invokes on the calling thread; each finished call starts the next pending one, which
+     * keeps at most {@code batchParallelism} running without a thread waiting on them.
+     */
+    private final class Batch {
+        private final JsonNode calls;
+        private final GatewayResponse[] results;
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicInteger remaining;
+        private final CompletableFuture<GatewayResponse> done = new CompletableFuture<>();
+
+        Batch(JsonNode calls) {
+            this.calls = calls;
+            this.results = new GatewayResponse[calls.size()];
+            this.remaining = new AtomicInteger(calls.size());
+            if (calls.isEmpty()) {
+                done.complete(GatewayResponse.ok(NO_PARAMS));
+            }
+        }
+
+        void launch() {
+            int index = next.getAndIncrement();
+            if (index >= results.length) {
+                return;
+            }
+            CompletableFuture.supplyAsync(() -> dispatchJsonCall(calls.get(index)), batchExecutor)
+                .thenCompose(call -> call)
+                .whenComplete((response, error) -> {
+                    finish(index, response != null ? response
+                        : GatewayResponse.error(500, "Internal Server Error", "Gateway error: " + error.getMessage()));
+                    launch();
+                });
+        }
+
+        private void finish(int index, GatewayResponse response) {
+            results[index] = response;
+            if (remaining.decrementAndGet() == 0) {
+                done.complete(GatewayResponse.ok(this::writeResults));
+            }
+        }
+
+        private void writeResults(OutputStream out) throws IOException {
+            out.write('[');
+            for (int i = 0; i < results.length; i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                GatewayResponse result = results[i];
+                out.write(("{\"status\":" + result.statusCode() + ",\"body\":").getBytes(StandardCharsets.UTF_8));
+                if (result.isStreamed()) {
+                    result.bodyWriter().writeTo(out);
+                } else {
+                    out.write(result.body());
+                }
+                out.write('}');
+            }
+            out.write(']');
+        }
+    }
+
+    /**
+     * @param cacheKey when not null, the result is serialized here and stored under this key
+     * @param ndjson   write the elements of a streaming result as lines of JSON
+     * @param format   the format the result is written in
+     */
+    private CompletableFuture<GatewayResponse> invoke(RouteInfo route, Object[] params, ResponseCache.Key cacheKey,
+                                                      boolean ndjson, Marshaller format) {
+        Request brokerRequest = new Request(route.instance(), route.method(), params, route.accessor());
+
+        return broker.invokeAsync(brokerRequest).thenApply(brokerResponse -> {
+            if (brokerResponse.hasError()) {
+                if (brokerResponse.getError().getCause() instanceof RejectedExecutionException) {
+                    return GatewayResponse.error(503, "Service Unavailable", brokerResponse.getErrorMessage());
+                }
+                return GatewayResponse.error(500, "Internal Server Error", brokerResponse.getErrorMessage());
+            }
+            Object result = brokerResponse.getResult();
+            if (cacheKey != null) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                try {
+                    route.binder().writeResult(out, result);
+                } catch (RuntimeException e) {
+                    return GatewayResponse.error(500, "Internal Server Error", "Gateway error: " + e.getMessage());
+                }
+                byte[] json = out.toByteArray();
+                responseCache.put(cacheKey, json, route.cacheTtlMs());
+                return GatewayResponse.ok(json);
+            }
+            if (route.binder().isStreaming()) {
+                return GatewayResponse.chunked(ndjson ? GatewayResponse.NDJSON_CONTENT_TYPE : format.contentType(),
+                    out -> route.binder().writeResult(out, result, ndjson, format));
+            }
+            return GatewayResponse.ok(format.contentType(), out -> route.binder().writeResult(out, result, false, format));
+        });
+    }
+
+    private GatewayResponse handleHealthCheck(String path) {
+        if (path.equals("/health") || path.equals("/health/")) {
+            return GatewayResponse.ok("{\"status\":\"UP\",\"gateway\":\"HTTPGateway\",\"timestamp\":" + System.currentTimeMillis() + "}");
+        }
+        String[] parts = path.split("/");
+        if (parts.length >= 3) {
+            String serviceName = parts[2];
+            boolean serviceExists = routeRegistry.getAllServiceNames().contains(serviceName);
+
+            if (serviceExists) {
+                return GatewayResponse.ok("{\"status\":\"UP\",\"service\":\"" + serviceName + "\",\"timestamp\":" + System.currentTimeMillis() + "}");
+            }
+            return GatewayResponse.error(404, "Not Found", "Service '" + serviceName + "' not found");
+        }
+        return GatewayResponse.error(400, "Bad Request", "Invalid health check path");
+    }
+}
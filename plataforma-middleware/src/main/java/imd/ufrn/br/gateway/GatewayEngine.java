@@ -0,0 +1,13 @@
+package imd.ufrn.br.gateway;
+
+import imd.ufrn.br.lifecycle.Lifecycle;
+
+import java.io.IOException;
+
+/**
+ * An HTTP server implementation the platform can front its routes with. Selected through the
+ * {@code gateway.engine} property.
+ */
+public interface GatewayEngine extends Lifecycle {
+    void start(int httpPort) throws IOException;
+}
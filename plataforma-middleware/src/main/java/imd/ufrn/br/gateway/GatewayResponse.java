@@ -0,0 +1,69 @@
+package imd.ufrn.br.gateway;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Transport-neutral result of a gateway dispatch. Engines only need to turn it into bytes on the wire.
+ * Small fixed bodies are carried as {@code body}; invocation results carry a {@code bodyWriter} that
+ * serializes straight into the engine's output instead. A {@code chunked} body is of unknown length
+ * and is sent with chunked transfer encoding as it is written, each flush of the writer reaching the
+ * client. {@code headers} are extra response headers beyond Content-Type and the framing headers the
+ * engine sets itself.
+ */
+public record GatewayResponse(
+    int statusCode,
+    String contentType,
+    byte[] body,
+    BodyWriter bodyWriter,
+    boolean chunked,
+    Map<String, String> headers
+) {
+
+    public static final String CONTENT_TYPE = "application/json; charset=UTF-8";
+    public static final String NDJSON_CONTENT_TYPE = "application/x-ndjson; charset=UTF-8";
+
+    @FunctionalInterface
+    public interface BodyWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    public static GatewayResponse ok(String json) {
+        return ok(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static GatewayResponse ok(byte[] json) {
+        return new GatewayResponse(200, CONTENT_TYPE, json, null, false, Map.of());
+    }
+
+    public static GatewayResponse ok(BodyWriter bodyWriter) {
+        return new GatewayResponse(200, CONTENT_TYPE, null, bodyWriter, false, Map.of());
+    }
+
+    public static GatewayResponse ok(String contentType, BodyWriter bodyWriter) {
+        return new GatewayResponse(200, contentType, null, bodyWriter, false, Map.of());
+    }
+
+    public static GatewayResponse chunked(String contentType, BodyWriter bodyWriter) {
+        return new GatewayResponse(200, contentType, null, bodyWriter, true, Map.of());
+    }
+
+    public static GatewayResponse error(int statusCode, String errorType, String errorMessage) {
+        String sanitizedMessage = errorMessage != null ? errorMessage.replace("\"", "'") : "null";
+        String jsonErrorBody = "{\"error\":\"" + errorType + "\",\"message\":\"" + sanitizedMessage + "\"}";
+        return new GatewayResponse(statusCode, CONTENT_TYPE, jsonErrorBody.getBytes(StandardCharsets.UTF_8), null, false, Map.of());
+    }
+
+    public GatewayResponse withHeader(String name, String value) {
+        Map<String, String> extended = new LinkedHashMap<>(headers);
+        extended.put(name, value);
+        return new GatewayResponse(statusCode, contentType, body, bodyWriter, chunked, extended);
+    }
+
+    public boolean isStreamed() {
+        return bodyWriter != null;
+    }
+}
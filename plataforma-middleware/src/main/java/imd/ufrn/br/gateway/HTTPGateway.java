@@ -3,43 +3,59 @@ package imd.ufrn.br.gateway;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
-import imd.ufrn.br.annotations.HttpVerb;
 import imd.ufrn.br.broker.Broker;
-import imd.ufrn.br.lifecycle.Lifecycle;
-import imd.ufrn.br.registry.RouteInfo;
+import imd.ufrn.br.infra.VirtualThreads;
 import imd.ufrn.br.registry.RouteRegistry;
-import imd.ufrn.br.remoting.JsonMarshaller;
-import imd.ufrn.br.remoting.Request;
-import imd.ufrn.br.remoting.Response;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
-import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
-public class HTTPGateway implements HttpHandler, Lifecycle {
+public class HTTPGateway implements HttpHandler, GatewayEngine {
 
-    private final RouteRegistry routeRegistry;
-    private final Broker broker;
-    private final JsonMarshaller marshaller;
+    private final GatewayDispatcher dispatcher;
+    private final boolean virtualThreads;
     private HttpServer server;
+    private ExecutorService executor;
     private volatile boolean running = false;
 
     public HTTPGateway(RouteRegistry routeRegistry, Broker broker) {
-        this.routeRegistry = routeRegistry;
-        this.broker = broker;
-        this.marshaller = new JsonMarshaller(); // Using a concrete instance for now
+        this(routeRegistry, broker, false);
     }
 
+    public HTTPGateway(RouteRegistry routeRegistry, Broker broker, boolean virtualThreads) {
+        this(new GatewayDispatcher(routeRegistry, broker), virtualThreads);
+    }
+
+    public HTTPGateway(GatewayDispatcher dispatcher, boolean virtualThreads) {
+        this.dispatcher = dispatcher;
+        this.virtualThreads = virtualThreads;
+    }
+
+    @Override
     public void start(int httpPort) throws IOException {
         if (running) {
             return;
         }
+        // Without TCP_NODELAY, calls on a kept-alive connection stall on delayed ACKs (~40 ms each);
+        // the server reads the property once, so it has to be set before the first server is created
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
         server = HttpServer.create(new InetSocketAddress(httpPort), 0);
         server.createContext("/", this);
-        server.setExecutor(Executors.newCachedThreadPool());
+        executor = virtualThreads ? VirtualThreads.newPerTaskExecutor("HTTPGateway-") : null;
+        if (virtualThreads && executor == null) {
+            System.err.println("HTTPGateway: Virtual threads not available, falling back to platform threads");
+        }
+        if (executor == null) {
+            executor = Executors.newCachedThreadPool();
+        }
+        server.setExecutor(executor);
         server.start();
         running = true;
     }
@@ -53,6 +69,7 @@ public class HTTPGateway implements HttpHandler, Lifecycle {
     public void stop() throws Exception {
         if (server != null && running) {
             server.stop(0);
+            executor.shutdown();
             running = false;
         }
     }
@@ -62,102 +79,87 @@ public class HTTPGateway implements HttpHandler, Lifecycle {
         return running;
     }
 
+    /**
+     * Binds the request and returns without waiting for the invocation; the response is sent from
+     * the completion callback, so a pending service call does not hold a gateway thread. Chunked
+     * responses are written from a gateway thread, blocking on the socket when the client reads
+     * slower than the result is produced.
+     */
     @Override
     public void handle(HttpExchange exchange) throws IOException {
-        String path = exchange.getRequestURI().getPath();
-        String methodStr = exchange.getRequestMethod();
-        
-        if (path.startsWith("/health")) {
-            handleHealthCheck(exchange, path);
-            return;
-        }
-        
-        HttpVerb verb;
-
+        CompletableFuture<GatewayResponse> response;
+        // The request body stays open until the exchange is closed, as streamed parameters are read
+        // from it while the method runs
+        InputStream requestBody = exchange.getRequestBody();
         try {
-            verb = HttpVerb.valueOf(methodStr.toUpperCase());
-        } catch (IllegalArgumentException e) {
-            sendErrorResponse(exchange, 405, "Method Not Allowed", "HTTP verb '" + methodStr + "' is not supported.");
-            return;
+            response = dispatcher.dispatch(
+                exchange.getRequestMethod(),
+                exchange.getRequestURI().getPath(),
+                requestBody,
+                exchange.getRequestHeaders().getFirst("Accept"),
+                exchange.getRequestHeaders().getFirst("Content-Type")
+            );
+        } catch (RuntimeException e) {
+            exchange.close();
+            throw e;
         }
-
-        try {
-            RouteInfo route = routeRegistry.findRoute(verb, path);
-
-            if (route == null) {
-                sendErrorResponse(exchange, 404, "Not Found", "No route found for " + verb + " " + path);
-                return;
-            }
-
-            String requestBody;
-            try (InputStream is = exchange.getRequestBody()) {
-                requestBody = new String(is.readAllBytes(), StandardCharsets.UTF_8);
-            }
-
-            Object[] params = marshaller.unmarshalParameters(requestBody, route.parameterTypes());
-
-            Request brokerRequest = new Request(route.instance(), route.method(), params);
-
-            Response brokerResponse = broker.invoke(brokerRequest);
-
-            if (brokerResponse.hasError()) {
-                sendErrorResponse(exchange, 500, "Internal Server Error", brokerResponse.getErrorMessage());
+        response.whenComplete((result, error) -> {
+            if (error != null) {
+                complete(exchange, GatewayResponse.error(500, "Internal Server Error", "Gateway error: " + error.getMessage()));
+            } else if (result.chunked()) {
+                // A stream can take as long as the client does to read it; keep it off the invoking thread
+                executor.execute(() -> complete(exchange, result));
             } else {
-                String jsonResponse = marshaller.serialize(brokerResponse.getResult());
-                sendSuccessResponse(exchange, jsonResponse);
+                complete(exchange, result);
             }
-
-        } catch (Exception e) {
-            System.err.println("HTTPGateway: Error processing request - " + e.getMessage());
-            sendErrorResponse(exchange, 500, "Internal Server Error", "Gateway error: " + e.getMessage());
-        } finally {
-            exchange.close();
-        }
+        });
     }
-    
-    private void handleHealthCheck(HttpExchange exchange, String path) throws IOException {
+
+    private void complete(HttpExchange exchange, GatewayResponse response) {
         try {
-            if (path.equals("/health") || path.equals("/health/")) {
-                String response = "{\"status\":\"UP\",\"gateway\":\"HTTPGateway\",\"timestamp\":" + System.currentTimeMillis() + "}";
-                sendSuccessResponse(exchange, response);
-            } else {
-                String[] parts = path.split("/");
-                if (parts.length >= 3) {
-                    String serviceName = parts[2];
-                    boolean serviceExists = routeRegistry.getAllServiceNames().contains(serviceName);
-                    
-                    if (serviceExists) {
-                        String response = "{\"status\":\"UP\",\"service\":\"" + serviceName + "\",\"timestamp\":" + System.currentTimeMillis() + "}";
-                        sendSuccessResponse(exchange, response);
-                    } else {
-                        sendErrorResponse(exchange, 404, "Not Found", "Service '" + serviceName + "' not found");
-                    }
-                } else {
-                    sendErrorResponse(exchange, 400, "Bad Request", "Invalid health check path");
-                }
-            }
+            sendResponse(exchange, response);
+        } catch (IOException e) {
+            System.err.println("HTTPGateway: Error sending response - " + e.getMessage());
         } finally {
             exchange.close();
         }
     }
 
-    private void sendSuccessResponse(HttpExchange exchange, String responseBody) throws IOException {
-        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
-        byte[] responseBytes = responseBody.getBytes(StandardCharsets.UTF_8);
-        exchange.sendResponseHeaders(200, responseBytes.length);
-        try (OutputStream os = exchange.getResponseBody()) {
-            os.write(responseBytes);
+    private void sendResponse(HttpExchange exchange, GatewayResponse response) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", response.contentType());
+        response.headers().forEach(exchange.getResponseHeaders()::set);
+        ResponseCompressor compressor = dispatcher.compressor();
+        String encoding = null;
+        if (compressor != null) {
+            exchange.getResponseHeaders().set("Vary", "Accept-Encoding");
+            encoding = compressor.negotiate(exchange.getRequestHeaders().getFirst("Accept-Encoding"));
+        }
+        if (!response.isStreamed()) {
+            byte[] responseBytes = response.body();
+            if (encoding != null && responseBytes.length >= compressor.minBytes()) {
+                responseBytes = compressor.compress(responseBytes, 0, responseBytes.length, encoding);
+                exchange.getResponseHeaders().set("Content-Encoding", encoding);
+            }
+            exchange.sendResponseHeaders(response.statusCode(), responseBytes.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(responseBytes);
+            }
+            return;
         }
-    }
 
-    private void sendErrorResponse(HttpExchange exchange, int statusCode, String errorType, String errorMessage) throws IOException {
-        String sanitizedMessage = errorMessage != null ? errorMessage.replace("\"", "'") : "null";
-        String jsonErrorBody = "{\"error\":\"" + errorType + "\",\"message\":\"" + sanitizedMessage + "\"}";
-        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=UTF-8");
-        byte[] responseBytes = jsonErrorBody.getBytes(StandardCharsets.UTF_8);
-        exchange.sendResponseHeaders(statusCode, responseBytes.length);
-        try (OutputStream os = exchange.getResponseBody()) {
-            os.write(responseBytes);
+        ExchangeOutputStream os = new ExchangeOutputStream(exchange, response.statusCode(), response.chunked(),
+                encoding == null ? null : compressor, encoding);
+        try {
+            response.bodyWriter().writeTo(os);
+        } catch (RuntimeException e) {
+            if (os.isCommitted()) {
+                throw new IOException("Response aborted after it was committed: " + e.getMessage(), e);
+            }
+            os.discard();
+            System.err.println("HTTPGateway: Error writing response - " + e.getMessage());
+            sendResponse(exchange, GatewayResponse.error(500, "Internal Server Error", "Gateway error: " + e.getMessage()));
+            return;
         }
+        os.close();
     }
 }
@@ -0,0 +1,167 @@
+package imd.ufrn.br.gateway;
+
+import imd.ufrn.br.infra.BufferPool;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Body stream of a chunked response on the NIO engine, written from a thread of its own. Each flush,
+ * or each full pooled buffer, is framed as an HTTP chunk and handed to the connection's event loop.
+ * Once {@link #MAX_UNSENT_CHUNKS} chunks are waiting for the socket, writes block until the loop has
+ * sent one, so the body is produced only as fast as the client reads it. The response head goes out
+ * with the first chunk, which lets a writer that fails before that still be answered with an error.
+ * For an HTTP/1.0 client the chunks go out unframed, and the connection is closed to end the body.
+ */
+final class NioChunkedOutputStream extends OutputStream {
+
+    private static final int MAX_UNSENT_CHUNKS = 4;
+    private static final byte[] CRLF = "\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final NioConnection connection;
+    private final byte[] head;
+    private final boolean framed;
+    private byte[] buffer;
+    private int count;
+    private boolean committed;
+    private int unsent;
+    private boolean aborted;
+
+    /**
+     * @param framed false to send the body as it is, for a connection closed once it has been written
+     */
+    NioChunkedOutputStream(NioConnection connection, byte[] head, boolean framed) {
+        this.connection = connection;
+        this.head = head;
+        this.framed = framed;
+        this.buffer = BufferPool.shared().acquire();
+    }
+
+    boolean isCommitted() {
+        return committed;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (count == buffer.length) {
+            sendChunk();
+        }
+        buffer[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (count == buffer.length) {
+                sendChunk();
+            }
+            int n = Math.min(len, buffer.length - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * Sends what has been written so far. With nothing to send, it fails if the connection has closed
+     * and has the connection check for a client that went away, so a writer flushing while it waits
+     * on its source notices the client is gone by its next flush.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (count > 0) {
+            sendChunk();
+        } else {
+            checkOpen();
+            connection.checkClient(this);
+        }
+    }
+
+    /**
+     * Sends what is left and the terminating chunk, and returns the bytes that end the response.
+     */
+    List<ByteBuffer> finish() throws IOException {
+        flush();
+        List<ByteBuffer> tail = new ArrayList<>(2);
+        if (!committed) {
+            committed = true;
+            tail.add(ByteBuffer.wrap(head));
+        }
+        if (framed) {
+            tail.add(ByteBuffer.wrap(LAST_CHUNK));
+        }
+        release();
+        return tail;
+    }
+
+    void release() {
+        if (buffer != null) {
+            BufferPool.shared().release(buffer);
+            buffer = null;
+        }
+    }
+
+    /**
+     * Called on the event loop once one chunk has been written to the socket.
+     */
+    synchronized void chunkSent() {
+        unsent--;
+        notifyAll();
+    }
+
+    /**
+     * Called on the event loop when the connection closes; the writer fails on its next chunk.
+     */
+    synchronized void abort() {
+        aborted = true;
+        notifyAll();
+    }
+
+    private void sendChunk() throws IOException {
+        awaitCapacity();
+        List<ByteBuffer> buffers = new ArrayList<>(4);
+        if (!committed) {
+            committed = true;
+            buffers.add(ByteBuffer.wrap(head));
+        }
+        if (framed) {
+            buffers.add(ByteBuffer.wrap((Integer.toHexString(count) + "\r\n").getBytes(StandardCharsets.US_ASCII)));
+            buffers.add(ByteBuffer.wrap(buffer, 0, count));
+            buffers.add(ByteBuffer.wrap(CRLF));
+        } else {
+            buffers.add(ByteBuffer.wrap(buffer, 0, count));
+        }
+        byte[] chunk = buffer;
+        buffer = BufferPool.shared().acquire();
+        count = 0;
+        connection.sendChunk(this, buffers, chunk);
+    }
+
+    private synchronized void checkOpen() throws IOException {
+        if (aborted) {
+            throw new IOException("Connection closed by the client");
+        }
+    }
+
+    private synchronized void awaitCapacity() throws IOException {
+        try {
+            while (unsent >= MAX_UNSENT_CHUNKS && !aborted) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the client to read");
+        }
+        if (aborted) {
+            throw new IOException("Connection closed by the client");
+        }
+        unsent++;
+    }
+}
@@ -0,0 +1,651 @@
+package imd.ufrn.br.gateway;
+
+import imd.ufrn.br.infra.BufferPool;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * State of one keep-alive HTTP/1.1 connection on an event loop. Pipelined requests are parsed from
+ * the read buffer one at a time: while a request is being served, reading is paused so responses go
+ * out in request order and a client cannot queue unbounded work on the server.
+ */
+final class NioConnection implements NioEventLoop.Handler {
+
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_HEADER_BYTES = 64 * 1024;
+    private static final byte[] CONTINUE_RESPONSE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final NioHttpGateway gateway;
+    private final NioEventLoop loop;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final ArrayDeque<ByteBuffer> pendingWrites = new ArrayDeque<>();
+    private final ArrayDeque<byte[]> pooledChunks = new ArrayDeque<>();
+
+    private ByteBuffer readBuffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    private boolean awaitingResponse = false;
+    private boolean continueSent = false;
+    private boolean closeAfterWrite = false;
+    private boolean closed = false;
+    private NioChunkedOutputStream activeStream;
+    private long lastActivity = System.currentTimeMillis();
+
+    /**
+     * @param webSocketKey the client's key when this is a WebSocket upgrade of the gateway's WebSocket path
+     */
+    private record ParsedRequest(String method, String path, boolean http11, boolean keepAlive, String accept,
+                                 String acceptEncoding, String contentType, byte[] body, String webSocketKey) {}
+
+    private record EncodedResponse(List<ByteBuffer> buffers, List<byte[]> pooledChunks) {
+        void release() {
+            pooledChunks.forEach(BufferPool.shared()::release);
+        }
+    }
+
+    NioConnection(NioHttpGateway gateway, NioEventLoop loop, SocketChannel channel, SelectionKey key) {
+        this.gateway = gateway;
+        this.loop = loop;
+        this.channel = channel;
+        this.key = key;
+    }
+
+    @Override
+    public void onReadable() {
+        try {
+            if (!readBuffer.hasRemaining()) {
+                growReadBuffer(readBuffer.capacity() * 2);
+            }
+            int read = channel.read(readBuffer);
+            if (read < 0) {
+                close();
+                return;
+            }
+            lastActivity = System.currentTimeMillis();
+            processRequests();
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    @Override
+    public void onWritable() {
+        try {
+            writePending();
+            processRequests();
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    @Override
+    public boolean isIdleSince(long threshold) {
+        return !awaitingResponse && pendingWrites.isEmpty() && lastActivity < threshold;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (activeStream != null) {
+            activeStream.abort();
+        }
+        key.cancel();
+        pendingWrites.clear();
+        pooledChunks.forEach(BufferPool.shared()::release);
+        pooledChunks.clear();
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void processRequests() throws IOException {
+        while (!closed && !awaitingResponse && pendingWrites.isEmpty() && !closeAfterWrite) {
+            ParsedRequest request = parseRequest();
+            if (request == null) {
+                break;
+            }
+            if (request.webSocketKey() != null) {
+                upgrade(request);
+                return;
+            }
+            dispatch(request);
+        }
+        updateInterest();
+    }
+
+    /**
+     * Parses one complete request from the front of the read buffer, or returns null when more bytes
+     * are needed. Malformed or oversized requests are answered with an error and the connection closed.
+     */
+    private ParsedRequest parseRequest() throws IOException {
+        byte[] data = readBuffer.array();
+        int available = readBuffer.position();
+
+        int headerEnd = indexOfHeaderEnd(data, available);
+        if (headerEnd < 0) {
+            if (available >= MAX_HEADER_BYTES) {
+                reject(431, "Request Header Fields Too Large", "Request headers exceed " + MAX_HEADER_BYTES + " bytes");
+            }
+            return null;
+        }
+
+        String head = new String(data, 0, headerEnd, StandardCharsets.ISO_8859_1);
+        String[] lines = head.split("\r\n");
+        String[] requestLine = lines[0].split(" ");
+        if (requestLine.length != 3 || !requestLine[2].startsWith("HTTP/1.")) {
+            reject(400, "Bad Request", "Malformed request line");
+            return null;
+        }
+
+        boolean http11 = requestLine[2].equals("HTTP/1.1");
+        boolean keepAlive = http11;
+        long contentLength = 0;
+        boolean expectContinue = false;
+        String accept = null;
+        String acceptEncoding = null;
+        String contentType = null;
+        String upgrade = null;
+        String webSocketKey = null;
+        String webSocketVersion = null;
+
+        for (int i = 1; i < lines.length; i++) {
+            String line = lines[i];
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String name = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+            switch (name) {
+                case "content-length" -> {
+                    try {
+                        contentLength = Long.parseLong(value);
+                    } catch (NumberFormatException e) {
+                        reject(400, "Bad Request", "Invalid Content-Length");
+                        return null;
+                    }
+                }
+                case "connection" -> {
+                    String token = value.toLowerCase(Locale.ROOT);
+                    if (token.contains("close")) {
+                        keepAlive = false;
+                    } else if (token.contains("keep-alive")) {
+                        keepAlive = true;
+                    }
+                }
+                case "transfer-encoding" -> {
+                    reject(411, "Length Required", "Chunked request bodies are not supported");
+                    return null;
+                }
+                case "expect" -> expectContinue = value.equalsIgnoreCase("100-continue");
+                case "accept" -> accept = value;
+                case "accept-encoding" -> acceptEncoding = value;
+                case "content-type" -> contentType = value;
+                case "upgrade" -> upgrade = value;
+                case "sec-websocket-key" -> webSocketKey = value;
+                case "sec-websocket-version" -> webSocketVersion = value;
+                default -> {
+                }
+            }
+        }
+
+        int bodyStart = headerEnd + 4;
+        if (contentLength < 0 || bodyStart + contentLength > gateway.maxRequestBytes()) {
+            reject(413, "Payload Too Large", "Request exceeds " + gateway.maxRequestBytes() + " bytes");
+            return null;
+        }
+
+        int total = bodyStart + (int) contentLength;
+        if (available < total) {
+            if (readBuffer.capacity() < total) {
+                growReadBuffer(total);
+            }
+            if (expectContinue && !continueSent) {
+                continueSent = true;
+                pendingWrites.add(ByteBuffer.wrap(CONTINUE_RESPONSE));
+                writePending();
+            }
+            return null;
+        }
+
+        String path;
+        try {
+            path = decodePath(requestLine[1]);
+        } catch (IllegalArgumentException e) {
+            reject(400, "Bad Request", "Malformed request target");
+            return null;
+        }
+
+        boolean webSocket = "websocket".equalsIgnoreCase(upgrade) && path.equals(gateway.webSocketPath())
+                && requestLine[0].equals("GET");
+        if (webSocket && (webSocketKey == null || !"13".equals(webSocketVersion))) {
+            reject(400, "Bad Request", "WebSocket upgrade needs Sec-WebSocket-Key and Sec-WebSocket-Version 13");
+            return null;
+        }
+
+        byte[] body = Arrays.copyOfRange(data, bodyStart, total);
+        consume(total);
+        continueSent = false;
+        return new ParsedRequest(requestLine[0], path, http11, keepAlive, accept, acceptEncoding, contentType, body,
+                webSocket ? webSocketKey : null);
+    }
+
+    /**
+     * Answers a WebSocket upgrade and hands the connection, with whatever the client sent after the
+     * request, to a {@link WebSocketConnection}; this object is done with it.
+     */
+    private void upgrade(ParsedRequest request) {
+        byte[] handshake = ("HTTP/1.1 101 Switching Protocols\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Accept: " + WebSocketConnection.acceptKey(request.webSocketKey()) + "\r\n\r\n")
+                .getBytes(StandardCharsets.ISO_8859_1);
+        WebSocketConnection webSocket = new WebSocketConnection(gateway, loop, channel, key, readBuffer);
+        key.attach(webSocket);
+        webSocket.start(handshake);
+    }
+
+    private void dispatch(ParsedRequest request) throws IOException {
+        awaitingResponse = true;
+        if (gateway.workers() == null) {
+            CompletableFuture<EncodedResponse> response = invoke(request);
+            if (response.isDone()) {
+                if (response.isCompletedExceptionally()) {
+                    close();
+                } else if (response.join() != null) {
+                    complete(request, response.join());
+                }
+                return;
+            }
+            response.whenComplete((encoded, error) -> loop.execute(() -> finish(request, encoded, error)));
+            return;
+        }
+        try {
+            gateway.workers().execute(() -> invoke(request)
+                    .whenComplete((encoded, error) -> loop.execute(() -> finish(request, encoded, error))));
+        } catch (RejectedExecutionException e) {
+            close();
+        }
+    }
+
+    /**
+     * Dispatches the request and serializes its result once the invocation completes. Serialization
+     * runs on whichever thread finishes the invocation, so the event loop only ever sees finished
+     * buffers and never waits on a pending call. Chunked responses are handed to a stream writer
+     * instead and complete to null; the writer finishes the request itself. A dispatch or
+     * serialization failure is answered with a 500 response.
+     */
+    private CompletableFuture<EncodedResponse> invoke(ParsedRequest request) {
+        CompletableFuture<GatewayResponse> dispatched;
+        try {
+            dispatched = gateway.dispatcher().dispatch(request.method(), request.path(),
+                    new ByteArrayInputStream(request.body()), request.accept(), request.contentType());
+        } catch (RuntimeException e) {
+            dispatched = CompletableFuture.failedFuture(e);
+        }
+        return dispatched
+                .thenApply(response -> {
+                    if (response.chunked()) {
+                        stream(request, response);
+                        return null;
+                    }
+                    return encode(response, request);
+                })
+                .exceptionally(error -> {
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+                    System.err.println("NioHttpGateway: Error dispatching request - " + cause);
+                    return encode(GatewayResponse.error(500, "Internal Server Error", "Gateway error: " + cause.getMessage()),
+                            request);
+                });
+    }
+
+    /**
+     * Writes a chunked response on a stream writer thread, which blocks whenever the client falls
+     * behind. A writer that fails before anything was sent is answered with an error response; after
+     * that the connection is closed, so the client cannot mistake a cut-off body for a complete one.
+     * HTTP/1.0 clients cannot read chunked bodies, so theirs is sent unframed and ended by closing
+     * the connection.
+     */
+    private void stream(ParsedRequest request, GatewayResponse response) {
+        ResponseCompressor compressor = gateway.dispatcher().compressor();
+        String encoding = compressor == null ? null : compressor.negotiate(request.acceptEncoding());
+        boolean framed = request.http11();
+        NioChunkedOutputStream out = new NioChunkedOutputStream(this,
+                head(response, request.keepAlive() && framed, request.http11(), -1, compressor != null, encoding), framed);
+        Runnable writer = () -> {
+            EncodedResponse ending;
+            try {
+                if (encoding != null) {
+                    CompressingOutputStream compressing = compressor.compressing(out, encoding);
+                    response.bodyWriter().writeTo(compressing);
+                    compressing.finish();
+                } else {
+                    response.bodyWriter().writeTo(out);
+                }
+                ending = new EncodedResponse(out.finish(), List.of());
+            } catch (IOException | RuntimeException e) {
+                out.release();
+                if (out.isCommitted()) {
+                    loop.execute(this::close);
+                    return;
+                }
+                System.err.println("NioHttpGateway: Error writing response - " + e.getMessage());
+                ending = encode(GatewayResponse.error(500, "Internal Server Error", "Gateway error: " + e.getMessage()),
+                        request);
+            }
+            EncodedResponse encoded = ending;
+            loop.execute(() -> {
+                activeStream = null;
+                if (!framed) {
+                    closeAfterWrite = true;
+                }
+                finish(request, encoded);
+            });
+        };
+        try {
+            gateway.streamWriters().execute(writer);
+        } catch (RejectedExecutionException e) {
+            out.release();
+            loop.execute(this::close);
+        }
+    }
+
+    /**
+     * Called from the stream writer while it has nothing to send. Reading is paused during a response,
+     * so a client that closed the connection is only noticed here, by a read that finds the end of
+     * the stream; bytes of a pipelined request are kept for later, as far as the buffer has room.
+     */
+    void checkClient(NioChunkedOutputStream stream) {
+        loop.execute(() -> {
+            if (!closed && readBuffer.hasRemaining()) {
+                try {
+                    if (channel.read(readBuffer) < 0) {
+                        close();
+                    }
+                } catch (IOException e) {
+                    close();
+                }
+            }
+            if (closed) {
+                stream.abort();
+            }
+        });
+    }
+
+    /**
+     * Queues one chunk of a streamed body. Called from the stream writer; {@code pooledChunk} goes
+     * back to the pool, and the writer is told it may go on, once the chunk has been written.
+     */
+    void sendChunk(NioChunkedOutputStream stream, List<ByteBuffer> buffers, byte[] pooledChunk) {
+        loop.execute(() -> {
+            if (closed) {
+                BufferPool.shared().release(pooledChunk);
+                stream.abort();
+                return;
+            }
+            activeStream = stream;
+            pendingWrites.addAll(buffers);
+            pooledChunks.add(pooledChunk);
+            try {
+                writePending();
+                updateInterest();
+            } catch (IOException e) {
+                close();
+            }
+        });
+    }
+
+    /**
+     * @param error set when not even an error response could be encoded; the connection is closed
+     */
+    private void finish(ParsedRequest request, EncodedResponse response, Throwable error) {
+        if (error != null) {
+            close();
+            return;
+        }
+        finish(request, response);
+    }
+
+    private void finish(ParsedRequest request, EncodedResponse response) {
+        if (response == null) {
+            return;
+        }
+        try {
+            complete(request, response);
+            processRequests();
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    private void complete(ParsedRequest request, EncodedResponse response) throws IOException {
+        if (closed) {
+            response.release();
+            return;
+        }
+        awaitingResponse = false;
+        if (!request.keepAlive()) {
+            closeAfterWrite = true;
+        }
+        enqueue(response);
+        writePending();
+    }
+
+    private void reject(int statusCode, String errorType, String message) throws IOException {
+        closeAfterWrite = true;
+        enqueue(encode(GatewayResponse.error(statusCode, errorType, message), false, true, null, null));
+        writePending();
+    }
+
+    private void enqueue(EncodedResponse response) {
+        pendingWrites.addAll(response.buffers());
+        pooledChunks.addAll(response.pooledChunks());
+    }
+
+    private EncodedResponse encode(GatewayResponse response, ParsedRequest request) {
+        ResponseCompressor compressor = gateway.dispatcher().compressor();
+        String encoding = compressor == null ? null : compressor.negotiate(request.acceptEncoding());
+        return encode(response, request.keepAlive(), request.http11(), compressor, encoding);
+    }
+
+    /**
+     * @param compressor the gateway's compressor, or null when compression is off
+     * @param encoding   the encoding negotiated with the client, or null to send the body as it is
+     */
+    private static EncodedResponse encode(GatewayResponse response, boolean keepAlive, boolean http11,
+                                          ResponseCompressor compressor, String encoding) {
+        List<ByteBuffer> body;
+        List<byte[]> pooled = List.of();
+        long contentLength;
+        BufferChainOutputStream out = null;
+        if (response.isStreamed()) {
+            out = new BufferChainOutputStream();
+            try {
+                response.bodyWriter().writeTo(out);
+            } catch (IOException | RuntimeException e) {
+                out.release();
+                System.err.println("NioHttpGateway: Error writing response - " + e.getMessage());
+                return encode(GatewayResponse.error(500, "Internal Server Error", "Gateway error: " + e.getMessage()), keepAlive,
+                        http11, compressor, encoding);
+            }
+            body = out.toBuffers();
+            pooled = out.chunks();
+            contentLength = out.size();
+        } else {
+            body = List.of(ByteBuffer.wrap(response.body()));
+            contentLength = response.body().length;
+        }
+
+        String contentEncoding = null;
+        if (encoding != null && contentLength >= compressor.minBytes()) {
+            BufferChainOutputStream compressed = new BufferChainOutputStream();
+            try (CompressingOutputStream compressing = compressor.compressing(compressed, encoding)) {
+                for (ByteBuffer buffer : body) {
+                    compressing.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                }
+            } catch (IOException e) {
+                // Neither stream does I/O
+                throw new UncheckedIOException(e);
+            }
+            if (out != null) {
+                out.release();
+            }
+            body = compressed.toBuffers();
+            pooled = compressed.chunks();
+            contentLength = compressed.size();
+            contentEncoding = encoding;
+        }
+
+        List<ByteBuffer> buffers = new ArrayList<>(body.size() + 1);
+        buffers.add(ByteBuffer.wrap(head(response, keepAlive, http11, contentLength, compressor != null, contentEncoding)));
+        buffers.addAll(body);
+        return new EncodedResponse(buffers, pooled);
+    }
+
+    /**
+     * @param http11          whether the request was HTTP/1.1; an HTTP/1.0 client only keeps the
+     *                        connection open when told so
+     * @param contentLength   the body length, or -1 for a body of unknown length: chunked for HTTP/1.1,
+     *                        ended by closing the connection for HTTP/1.0
+     * @param vary            whether the body depends on Accept-Encoding
+     * @param contentEncoding the encoding the body is compressed with, or null
+     */
+    private static byte[] head(GatewayResponse response, boolean keepAlive, boolean http11, long contentLength,
+                               boolean vary, String contentEncoding) {
+        StringBuilder head = new StringBuilder(128)
+                .append("HTTP/1.1 ").append(response.statusCode()).append(' ').append(reasonPhrase(response.statusCode())).append("\r\n")
+                .append("Content-Type: ").append(response.contentType()).append("\r\n");
+        if (contentLength < 0) {
+            if (http11) {
+                head.append("Transfer-Encoding: chunked\r\n");
+            }
+        } else {
+            head.append("Content-Length: ").append(contentLength).append("\r\n");
+        }
+        if (contentEncoding != null) {
+            head.append("Content-Encoding: ").append(contentEncoding).append("\r\n");
+        }
+        if (vary) {
+            head.append("Vary: Accept-Encoding\r\n");
+        }
+        response.headers().forEach((name, value) -> head.append(name).append(": ").append(value).append("\r\n"));
+        if (!keepAlive) {
+            head.append("Connection: close\r\n");
+        } else if (!http11) {
+            head.append("Connection: keep-alive\r\n");
+        }
+        head.append("\r\n");
+        return head.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Writes as much of the queued output as the socket accepts. Whatever is left is picked up again
+     * once the selector reports the channel writable.
+     */
+    private void writePending() throws IOException {
+        if (!pendingWrites.isEmpty()) {
+            channel.write(pendingWrites.toArray(new ByteBuffer[0]));
+            while (!pendingWrites.isEmpty() && !pendingWrites.peek().hasRemaining()) {
+                ByteBuffer written = pendingWrites.poll();
+                if (!pooledChunks.isEmpty() && written.array() == pooledChunks.peek()) {
+                    BufferPool.shared().release(pooledChunks.poll());
+                    if (activeStream != null) {
+                        activeStream.chunkSent();
+                    }
+                }
+            }
+            lastActivity = System.currentTimeMillis();
+        }
+        if (pendingWrites.isEmpty() && closeAfterWrite) {
+            close();
+        }
+    }
+
+    private void updateInterest() {
+        if (closed) {
+            return;
+        }
+        int ops = 0;
+        if (!pendingWrites.isEmpty()) {
+            ops |= SelectionKey.OP_WRITE;
+        } else if (!awaitingResponse && !closeAfterWrite) {
+            ops |= SelectionKey.OP_READ;
+        }
+        key.interestOps(ops);
+    }
+
+    private void consume(int length) {
+        readBuffer.flip();
+        readBuffer.position(length);
+        if (readBuffer.capacity() > INITIAL_BUFFER_SIZE && readBuffer.remaining() <= INITIAL_BUFFER_SIZE) {
+            // Give back the memory of a large body once it has been handed off
+            ByteBuffer shrunk = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+            shrunk.put(readBuffer);
+            readBuffer = shrunk;
+        } else {
+            readBuffer.compact();
+        }
+    }
+
+    private void growReadBuffer(int minCapacity) {
+        int capacity = Math.min(Math.max(minCapacity, readBuffer.capacity() * 2), gateway.maxRequestBytes() + MAX_HEADER_BYTES);
+        if (capacity <= readBuffer.capacity()) {
+            return;
+        }
+        ByteBuffer grown = ByteBuffer.allocate(capacity);
+        readBuffer.flip();
+        grown.put(readBuffer);
+        readBuffer = grown;
+    }
+
+    private static int indexOfHeaderEnd(byte[] data, int length) {
+        for (int i = 0; i + 3 < length; i++) {
+            if (data[i] == '\r' && data[i + 1] == '\n' && data[i + 2] == '\r' && data[i + 3] == '\n') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String decodePath(String target) {
+        int query = target.indexOf('?');
+        String rawPath = query < 0 ? target : target.substring(0, query);
+        if (rawPath.indexOf('%') < 0) {
+            return rawPath;
+        }
+        return URI.create(rawPath).getPath();
+    }
+
+    private static String reasonPhrase(int statusCode) {
+        return switch (statusCode) {
+            case 200 -> "OK";
+            case 400 -> "Bad Request";
+            case 404 -> "Not Found";
+            case 405 -> "Method Not Allowed";
+            case 411 -> "Length Required";
+            case 413 -> "Payload Too Large";
+            case 431 -> "Request Header Fields Too Large";
+            case 500 -> "Internal Server Error";
+            case 503 -> "Service Unavailable";
+            default -> "Status";
+        };
+    }
+}
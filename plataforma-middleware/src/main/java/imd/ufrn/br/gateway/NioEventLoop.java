@@ -0,0 +1,174 @@
+package imd.ufrn.br.gateway;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.Channel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * One selector thread owning a subset of a server's connections. All connection state is only
+ * touched from this thread; other threads hand work over through {@link #execute(Runnable)}. The
+ * protocol lives in the {@link Handler} attached to each connection.
+ */
+final class NioEventLoop implements Runnable {
+
+    private static final long SELECT_TIMEOUT_MS = 1000;
+
+    /**
+     * Protocol state of one connection, driven by its loop.
+     */
+    interface Handler {
+        void onReadable();
+
+        void onWritable();
+
+        void close();
+
+        boolean isIdleSince(long threshold);
+    }
+
+    @FunctionalInterface
+    interface HandlerFactory {
+        Handler create(NioEventLoop loop, SocketChannel channel, SelectionKey key);
+    }
+
+    private final HandlerFactory handlers;
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final Thread thread;
+    private final long idleTimeoutMs;
+    private volatile boolean running = true;
+
+    NioEventLoop(String name, long idleTimeoutMs, HandlerFactory handlers) throws IOException {
+        this.handlers = handlers;
+        this.selector = Selector.open();
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.thread = new Thread(this, name);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    void register(SocketChannel channel) {
+        execute(() -> {
+            try {
+                channel.configureBlocking(false);
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                key.attach(handlers.create(this, channel, key));
+            } catch (IOException e) {
+                closeQuietly(channel);
+            }
+        });
+    }
+
+    void execute(Runnable task) {
+        if (Thread.currentThread() == thread) {
+            task.run();
+            return;
+        }
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    void shutdown() throws InterruptedException {
+        running = false;
+        selector.wakeup();
+        thread.join(5000);
+    }
+
+    @Override
+    public void run() {
+        long lastSweep = System.currentTimeMillis();
+        while (running) {
+            try {
+                selector.select(SELECT_TIMEOUT_MS);
+                runTasks();
+
+                Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                while (selected.hasNext()) {
+                    SelectionKey key = selected.next();
+                    selected.remove();
+                    Handler connection = (Handler) key.attachment();
+                    if (connection == null) {
+                        continue;
+                    }
+                    try {
+                        if (key.isReadable()) {
+                            connection.onReadable();
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            connection.onWritable();
+                        }
+                    } catch (CancelledKeyException e) {
+                        connection.close();
+                    } catch (RuntimeException e) {
+                        // A failing request or service must not take down the other connections of the loop
+                        System.err.println(thread.getName() + ": Connection error - " + e);
+                        connection.close();
+                    }
+                }
+
+                long now = System.currentTimeMillis();
+                if (now - lastSweep >= SELECT_TIMEOUT_MS) {
+                    closeIdleConnections(now);
+                    lastSweep = now;
+                }
+            } catch (IOException e) {
+                System.err.println(thread.getName() + ": Event loop error - " + e.getMessage());
+            }
+        }
+        closeAll();
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                System.err.println(thread.getName() + ": Task error - " + e.getMessage());
+            }
+        }
+    }
+
+    private void closeIdleConnections(long now) {
+        if (idleTimeoutMs <= 0) {
+            return;
+        }
+        for (SelectionKey key : selector.keys()) {
+            Handler connection = (Handler) key.attachment();
+            if (connection != null && connection.isIdleSince(now - idleTimeoutMs)) {
+                connection.close();
+            }
+        }
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            Handler connection = (Handler) key.attachment();
+            if (connection != null) {
+                connection.close();
+            } else {
+                closeQuietly(key.channel());
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static void closeQuietly(Channel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
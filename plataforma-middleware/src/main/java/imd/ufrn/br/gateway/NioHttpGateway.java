@@ -0,0 +1,188 @@
+package imd.ufrn.br.gateway;
+
+import imd.ufrn.br.broker.Broker;
+import imd.ufrn.br.infra.VirtualThreads;
+import imd.ufrn.br.registry.RouteRegistry;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Selector-based HTTP/1.1 gateway engine. A single acceptor hands connections to a fixed set of
+ * event loops (one per core by default); each loop multiplexes its keep-alive connections and parses
+ * pipelined requests, answering them in order. Requests are dispatched inline on the loop unless a
+ * worker pool is configured, which is the better choice when services block. In virtual-thread mode
+ * every request is offloaded to its own virtual thread instead. Streaming results are written
+ * with chunked transfer encoding from separate writer threads. Connections upgraded to WebSocket on
+ * the {@link #enableWebSocket WebSocket path} carry multiplexed calls instead of HTTP requests.
+ */
+public class NioHttpGateway implements GatewayEngine {
+
+    private final GatewayDispatcher dispatcher;
+    private final int eventLoopCount;
+    private final int workerThreads;
+    private final long idleTimeoutMs;
+    private final int maxRequestBytes;
+    private final boolean virtualThreads;
+    private volatile String webSocketPath;
+
+    private ServerSocketChannel serverChannel;
+    private NioEventLoop[] eventLoops;
+    private ExecutorService workers;
+    private ExecutorService streamWriters;
+    private Thread acceptorThread;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private volatile boolean running = false;
+
+    public NioHttpGateway(RouteRegistry routeRegistry, Broker broker, int eventLoopCount, int workerThreads,
+                          long idleTimeoutMs, int maxRequestBytes, boolean virtualThreads) {
+        this(new GatewayDispatcher(routeRegistry, broker), eventLoopCount, workerThreads, idleTimeoutMs, maxRequestBytes,
+                virtualThreads);
+    }
+
+    public NioHttpGateway(GatewayDispatcher dispatcher, int eventLoopCount, int workerThreads,
+                          long idleTimeoutMs, int maxRequestBytes, boolean virtualThreads) {
+        this.dispatcher = dispatcher;
+        this.eventLoopCount = eventLoopCount > 0 ? eventLoopCount : Runtime.getRuntime().availableProcessors();
+        this.workerThreads = workerThreads;
+        this.idleTimeoutMs = idleTimeoutMs;
+        this.maxRequestBytes = maxRequestBytes;
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Accepts WebSocket upgrades on {@code path}; see {@link WebSocketConnection} for the messages.
+     */
+    public void enableWebSocket(String path) {
+        this.webSocketPath = path;
+    }
+
+    @Override
+    public void start(int httpPort) throws IOException {
+        if (running) {
+            return;
+        }
+        if (virtualThreads) {
+            workers = VirtualThreads.newPerTaskExecutor("NioHttpGateway-worker-");
+            if (workers == null) {
+                System.err.println("NioHttpGateway: Virtual threads not available, falling back to platform threads");
+            }
+        }
+        if (workers == null && workerThreads > 0) {
+            AtomicInteger workerIds = new AtomicInteger();
+            workers = Executors.newFixedThreadPool(workerThreads, r -> {
+                Thread t = new Thread(r, "NioHttpGateway-worker-" + workerIds.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        streamWriters = virtualThreads ? VirtualThreads.newPerTaskExecutor("NioHttpGateway-stream-") : null;
+        if (streamWriters == null) {
+            AtomicInteger streamIds = new AtomicInteger();
+            streamWriters = Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "NioHttpGateway-stream-" + streamIds.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        eventLoops = new NioEventLoop[eventLoopCount];
+        for (int i = 0; i < eventLoopCount; i++) {
+            eventLoops[i] = new NioEventLoop("NioHttpGateway-loop-" + i, idleTimeoutMs,
+                    (loop, channel, key) -> new NioConnection(this, loop, channel, key));
+            eventLoops[i].start();
+        }
+
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(new InetSocketAddress(httpPort), 1024);
+
+        running = true;
+        acceptorThread = new Thread(this::acceptLoop, "NioHttpGateway-acceptor");
+        acceptorThread.setDaemon(true);
+        acceptorThread.start();
+    }
+
+    @Override
+    public void start() throws Exception {
+        start(8082);
+    }
+
+    @Override
+    public void stop() throws Exception {
+        if (!running) {
+            return;
+        }
+        running = false;
+        serverChannel.close();
+        for (NioEventLoop loop : eventLoops) {
+            loop.shutdown();
+        }
+        // Stream writers may be waiting on a client that is gone along with the loops
+        streamWriters.shutdownNow();
+        if (workers != null) {
+            workers.shutdown();
+            if (!workers.awaitTermination(5, TimeUnit.SECONDS)) {
+                workers.shutdownNow();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                NioEventLoop loop = eventLoops[Math.floorMod(nextLoop.getAndIncrement(), eventLoops.length)];
+                loop.register(channel);
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("NioHttpGateway: Error accepting connection - " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    GatewayDispatcher dispatcher() {
+        return dispatcher;
+    }
+
+    ExecutorService workers() {
+        return workers;
+    }
+
+    /**
+     * Runs the body writers of chunked responses, which block while the client catches up and so
+     * are kept off both the event loops and the worker pool.
+     */
+    ExecutorService streamWriters() {
+        return streamWriters;
+    }
+
+    int maxRequestBytes() {
+        return maxRequestBytes;
+    }
+
+    /**
+     * The path WebSocket upgrades are accepted on, or null when they are not.
+     */
+    String webSocketPath() {
+        return webSocketPath;
+    }
+}
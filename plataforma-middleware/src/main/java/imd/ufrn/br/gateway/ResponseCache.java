@@ -0,0 +1,301 @@
+package imd.ufrn.br.gateway;
+
+import imd.ufrn.br.infra.MetricsCollector;
+import imd.ufrn.br.registry.RouteInfo;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Serialized response bodies of {@code @Cacheable} routes, keyed by route, path variable values
+ * and the request body with insignificant JSON whitespace removed. A hit is answered straight from
+ * the stored bytes, without touching the Broker or the marshaller.
+ * <p>
+ * The cache is bounded by the total size of keys and bodies and split into independently locked
+ * shards. Each shard is a segmented LRU: new entries enter a probation segment and are promoted to a
+ * protected segment (80% of the shard) on their second hit, so a burst of one-off requests evicts
+ * other one-off entries rather than the frequently read ones.
+ */
+public class ResponseCache {
+
+    private static final int SHARDS = 16;
+    private static final int ENTRY_OVERHEAD = 96;
+    private static final double PROTECTED_SHARE = 0.8;
+
+    private final Shard[] shards = new Shard[SHARDS];
+    private final MetricsCollector metricsCollector;
+
+    public ResponseCache(long maxBytes, MetricsCollector metricsCollector) {
+        this.metricsCollector = metricsCollector;
+        for (int i = 0; i < SHARDS; i++) {
+            shards[i] = new Shard(Math.max(1, maxBytes / SHARDS));
+        }
+        if (metricsCollector != null) {
+            metricsCollector.registerGauge("response_cache_entries", () -> entries());
+            metricsCollector.registerGauge("response_cache_bytes", () -> bytes());
+        }
+    }
+
+    public static final class Key {
+        private final RouteInfo route;
+        private final String[] pathValues;
+        private final byte[] body;
+        private final int hash;
+
+        private Key(RouteInfo route, String[] pathValues, byte[] body) {
+            this.route = route;
+            this.pathValues = pathValues;
+            this.body = body;
+            this.hash = 31 * (31 * System.identityHashCode(route) + Arrays.hashCode(pathValues)) + Arrays.hashCode(body);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key other && route == other.route && hash == other.hash
+                    && Arrays.equals(pathValues, other.pathValues) && Arrays.equals(body, other.body);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        private int weight() {
+            int weight = ENTRY_OVERHEAD + body.length;
+            for (String value : pathValues) {
+                weight += value.length();
+            }
+            return weight;
+        }
+    }
+
+    private record Entry(byte[] body, long expiresAt, int weight) {
+        boolean isExpired(long now) {
+            return expiresAt != 0 && now - expiresAt > 0;
+        }
+    }
+
+    public Key keyFor(RouteInfo route, String[] pathValues, byte[] requestBody) {
+        return new Key(route, pathValues, canonicalJson(requestBody));
+    }
+
+    /**
+     * @return the cached body, or null on a miss or when the entry has expired
+     */
+    public byte[] get(Key key) {
+        Entry entry = shardFor(key).get(key, System.nanoTime());
+        count(entry != null ? "response_cache_hits_total" : "response_cache_misses_total", 1);
+        return entry == null ? null : entry.body();
+    }
+
+    /**
+     * @param ttlMs time to live, or 0 to keep the entry until it is evicted or invalidated
+     */
+    public void put(Key key, byte[] body, long ttlMs) {
+        long expiresAt = ttlMs > 0 ? System.nanoTime() + ttlMs * 1_000_000 : 0;
+        int evicted = shardFor(key).put(key, new Entry(body, expiresAt, key.weight() + body.length));
+        count("response_cache_evictions_total", evicted);
+    }
+
+    /**
+     * Drops every entry of {@code route}, or only those for the given path variable values when
+     * {@code pathValues} is not null.
+     *
+     * @return the number of entries removed
+     */
+    public int invalidate(RouteInfo route, String[] pathValues) {
+        return removeIf(key -> key.route == route && (pathValues == null || Arrays.equals(key.pathValues, pathValues)));
+    }
+
+    public int invalidateAll() {
+        return removeIf(key -> true);
+    }
+
+    public long entries() {
+        long entries = 0;
+        for (Shard shard : shards) {
+            entries += shard.size();
+        }
+        return entries;
+    }
+
+    public long bytes() {
+        long bytes = 0;
+        for (Shard shard : shards) {
+            bytes += shard.bytes();
+        }
+        return bytes;
+    }
+
+    private int removeIf(Predicate<Key> predicate) {
+        int removed = 0;
+        for (Shard shard : shards) {
+            removed += shard.removeIf(predicate);
+        }
+        return removed;
+    }
+
+    private Shard shardFor(Key key) {
+        int h = key.hash ^ (key.hash >>> 16);
+        return shards[h & (SHARDS - 1)];
+    }
+
+    private void count(String name, long delta) {
+        if (metricsCollector != null && delta > 0) {
+            metricsCollector.addToCounter(name, delta);
+        }
+    }
+
+    /**
+     * Removes whitespace outside of JSON strings so that equivalent request bodies share one key.
+     * Returns the input itself when there is nothing to remove.
+     */
+    static byte[] canonicalJson(byte[] json) {
+        byte[] out = null;
+        int length = 0;
+        boolean inString = false;
+        boolean escaped = false;
+        for (int i = 0; i < json.length; i++) {
+            byte b = json[i];
+            boolean skip = false;
+            if (inString) {
+                if (escaped) {
+                    escaped = false;
+                } else if (b == '\\') {
+                    escaped = true;
+                } else if (b == '"') {
+                    inString = false;
+                }
+            } else if (b == '"') {
+                inString = true;
+            } else if (b == ' ' || b == '\t' || b == '\n' || b == '\r') {
+                skip = true;
+            }
+            if (skip && out == null) {
+                out = Arrays.copyOf(json, json.length);
+                length = i;
+            } else if (!skip && out != null) {
+                out[length++] = b;
+            }
+        }
+        return out == null ? json : Arrays.copyOf(out, length);
+    }
+
+    private static final class Shard {
+        private final long capacity;
+        private final long protectedCapacity;
+        private final LinkedHashMap<Key, Entry> probation = new LinkedHashMap<>(16, 0.75f, true);
+        private final LinkedHashMap<Key, Entry> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+        private long probationBytes;
+        private long protectedBytes;
+
+        Shard(long capacity) {
+            this.capacity = capacity;
+            this.protectedCapacity = (long) (capacity * PROTECTED_SHARE);
+        }
+
+        synchronized Entry get(Key key, long now) {
+            Entry entry = protectedSegment.get(key);
+            if (entry != null) {
+                if (entry.isExpired(now)) {
+                    protectedSegment.remove(key);
+                    protectedBytes -= entry.weight();
+                    return null;
+                }
+                return entry;
+            }
+            entry = probation.remove(key);
+            if (entry == null) {
+                return null;
+            }
+            probationBytes -= entry.weight();
+            if (entry.isExpired(now)) {
+                return null;
+            }
+            protectedSegment.put(key, entry);
+            protectedBytes += entry.weight();
+            while (protectedBytes > protectedCapacity && protectedSegment.size() > 1) {
+                demoteEldestProtected();
+            }
+            return entry;
+        }
+
+        /**
+         * @return the number of entries evicted to make room
+         */
+        synchronized int put(Key key, Entry entry) {
+            if (entry.weight() > capacity) {
+                return 0;
+            }
+            remove(key);
+            probation.put(key, entry);
+            probationBytes += entry.weight();
+            int evicted = 0;
+            while (probationBytes + protectedBytes > capacity) {
+                Map<Key, Entry> victims = probation.isEmpty() ? protectedSegment : probation;
+                Iterator<Map.Entry<Key, Entry>> eldest = victims.entrySet().iterator();
+                Entry victim = eldest.next().getValue();
+                eldest.remove();
+                if (victims == probation) {
+                    probationBytes -= victim.weight();
+                } else {
+                    protectedBytes -= victim.weight();
+                }
+                evicted++;
+            }
+            return evicted;
+        }
+
+        synchronized int removeIf(Predicate<Key> predicate) {
+            int removed = 0;
+            for (Iterator<Map.Entry<Key, Entry>> it = probation.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<Key, Entry> e = it.next();
+                if (predicate.test(e.getKey())) {
+                    probationBytes -= e.getValue().weight();
+                    it.remove();
+                    removed++;
+                }
+            }
+            for (Iterator<Map.Entry<Key, Entry>> it = protectedSegment.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<Key, Entry> e = it.next();
+                if (predicate.test(e.getKey())) {
+                    protectedBytes -= e.getValue().weight();
+                    it.remove();
+                    removed++;
+                }
+            }
+            return removed;
+        }
+
+        synchronized int size() {
+            return probation.size() + protectedSegment.size();
+        }
+
+        synchronized long bytes() {
+            return probationBytes + protectedBytes;
+        }
+
+        private void remove(Key key) {
+            Entry old = probation.remove(key);
+            if (old != null) {
+                probationBytes -= old.weight();
+            }
+            old = protectedSegment.remove(key);
+            if (old != null) {
+                protectedBytes -= old.weight();
+            }
+        }
+
+        private void demoteEldestProtected() {
+            Iterator<Map.Entry<Key, Entry>> eldest = protectedSegment.entrySet().iterator();
+            Map.Entry<Key, Entry> demoted = eldest.next();
+            eldest.remove();
+            protectedBytes -= demoted.getValue().weight();
+            probation.put(demoted.getKey(), demoted.getValue());
+            probationBytes += demoted.getValue().weight();
+        }
+    }
+}
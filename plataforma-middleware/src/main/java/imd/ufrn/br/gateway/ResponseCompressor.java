@@ -0,0 +1,167 @@
+package imd.ufrn.br.gateway;
+
+import imd.ufrn.br.infra.MetricsCollector;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+
+/**
+ * Negotiates and applies gzip or deflate content encoding for both gateway engines. Bodies below
+ * {@code minBytes} are sent as they are, since compressing them costs more than it saves. Deflaters
+ * hold native memory and are expensive to create, so they are reset and reused through a small
+ * shared pool rather than cached per thread, which would not help when every request runs on a
+ * fresh virtual thread. Bytes in and out, the overall ratio and the CPU time spent compressing are
+ * exported as metrics.
+ */
+public class ResponseCompressor {
+
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+
+    private static final int MAX_POOLED_DEFLATERS = 64;
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final int minBytes;
+    private final int level;
+    private final MetricsCollector metricsCollector;
+    private final Queue<Deflater> gzipDeflaters = new ConcurrentLinkedQueue<>();
+    private final Queue<Deflater> zlibDeflaters = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+    private final LongAdder bytesIn = new LongAdder();
+    private final LongAdder bytesOut = new LongAdder();
+    private final LongAdder cpuNanos = new LongAdder();
+
+    /**
+     * @param minBytes smallest body that is compressed
+     * @param level    Deflater compression level, 1 (fastest) to 9 (smallest)
+     */
+    public ResponseCompressor(int minBytes, int level, MetricsCollector metricsCollector) {
+        this.minBytes = Math.max(0, minBytes);
+        this.level = Math.max(Deflater.BEST_SPEED, Math.min(Deflater.BEST_COMPRESSION, level));
+        this.metricsCollector = metricsCollector;
+        if (metricsCollector != null) {
+            metricsCollector.registerGauge("gateway_compression_ratio", () -> {
+                long out = bytesOut.sum();
+                return out == 0 ? 0.0 : (double) bytesIn.sum() / out;
+            });
+            metricsCollector.registerGauge("gateway_compression_cpu_ms", () -> cpuNanos.sum() / 1_000_000.0);
+        }
+    }
+
+    public int minBytes() {
+        return minBytes;
+    }
+
+    /**
+     * Picks the encoding for a request's Accept-Encoding header: gzip when acceptable, otherwise
+     * deflate, otherwise null to send the body uncompressed.
+     */
+    public String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isEmpty()) {
+            return null;
+        }
+        boolean gzip = false;
+        boolean deflate = false;
+        boolean wildcard = false;
+        for (String part : acceptEncoding.split(",")) {
+            String[] params = part.split(";");
+            String coding = params[0].trim().toLowerCase(Locale.ROOT);
+            if (isRefused(params)) {
+                continue;
+            }
+            switch (coding) {
+                case GZIP, "x-gzip" -> gzip = true;
+                case DEFLATE -> deflate = true;
+                case "*" -> wildcard = true;
+                default -> {
+                }
+            }
+        }
+        if (gzip || wildcard) {
+            return GZIP;
+        }
+        return deflate ? DEFLATE : null;
+    }
+
+    /**
+     * Wraps {@code out} so that whatever is written to it reaches {@code out} compressed. Flushing
+     * the returned stream pushes everything written so far through; closing it writes the trailer
+     * and closes {@code out}.
+     */
+    public CompressingOutputStream compressing(OutputStream out, String encoding) {
+        return new CompressingOutputStream(this, out, encoding);
+    }
+
+    public byte[] compress(byte[] body, int offset, int length, String encoding) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, length / 4));
+        try (CompressingOutputStream compressing = compressing(out, encoding)) {
+            compressing.write(body, offset, length);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    Deflater acquireDeflater(boolean gzip) {
+        Deflater deflater = (gzip ? gzipDeflaters : zlibDeflaters).poll();
+        if (deflater != null) {
+            pooled.decrementAndGet();
+            return deflater;
+        }
+        // gzip frames raw deflate data itself; "deflate" in HTTP is the zlib format
+        return new Deflater(level, gzip);
+    }
+
+    void releaseDeflater(Deflater deflater, boolean gzip) {
+        deflater.reset();
+        if (pooled.incrementAndGet() <= MAX_POOLED_DEFLATERS) {
+            (gzip ? gzipDeflaters : zlibDeflaters).offer(deflater);
+        } else {
+            pooled.decrementAndGet();
+            deflater.end();
+        }
+    }
+
+    void record(String encoding, long in, long out, long nanos) {
+        bytesIn.add(in);
+        bytesOut.add(out);
+        cpuNanos.add(nanos);
+        if (metricsCollector != null) {
+            metricsCollector.incrementCounter("gateway_compressed_responses_total{encoding=\"" + encoding + "\"}");
+            metricsCollector.addToCounter("gateway_compression_bytes_in_total", in);
+            metricsCollector.addToCounter("gateway_compression_bytes_out_total", out);
+        }
+    }
+
+    /**
+     * CPU time of the current thread, or wall time where that is not available, as on virtual threads.
+     */
+    static long cpuTime() {
+        long cpu = THREADS.getCurrentThreadCpuTime();
+        return cpu >= 0 ? cpu : System.nanoTime();
+    }
+
+    private static boolean isRefused(String[] params) {
+        for (int i = 1; i < params.length; i++) {
+            String param = params[i].trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2)) <= 0;
+                } catch (NumberFormatException e) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
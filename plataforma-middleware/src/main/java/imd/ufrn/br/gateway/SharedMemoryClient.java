@@ -0,0 +1,158 @@
+package imd.ufrn.br.gateway;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Client of the {@link SharedMemoryTransport}, for a process on the same host. Connecting claims one
+ * channel of the shared file for this client; calls are used as with {@link BinaryRpcClient}, and any
+ * number of them can be outstanding. Callers take turns writing to the request ring, and a single
+ * reader thread waits on the response ring, spinning at first and parking as it stays idle. Closing the
+ * client hands the channel back; if the process dies instead, the server reclaims it.
+ */
+public class SharedMemoryClient implements AutoCloseable {
+
+    private static final long SERVER_CHECK_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final SharedMemoryRegion region;
+    private final int channel;
+    private final SharedMemoryRing requests;
+    private final SharedMemoryRing responses;
+    private final Map<Integer, CompletableFuture<BinaryRpcClient.Response>> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger nextId = new AtomicInteger();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final Thread reader;
+    private volatile boolean closed = false;
+
+    private SharedMemoryClient(SharedMemoryRegion region, int channel) {
+        this.region = region;
+        this.channel = channel;
+        this.requests = region.requests(channel);
+        this.responses = region.responses(channel);
+        this.reader = new Thread(this::readResponses, "SharedMemoryClient-reader");
+        this.reader.setDaemon(true);
+        this.reader.start();
+    }
+
+    /**
+     * @param file the file the middleware serves, as set in {@code ipc.shm.file}
+     * @throws IOException when no middleware serves the file or all of its channels are taken
+     */
+    public static SharedMemoryClient connect(Path file) throws IOException {
+        SharedMemoryRegion region = SharedMemoryRegion.open(file);
+        for (int i = 0; i < region.channelCount(); i++) {
+            if (region.compareAndSetState(i, SharedMemoryRegion.FREE, SharedMemoryRegion.CLAIMING)) {
+                region.setOwnerPid(i, ProcessHandle.current().pid());
+                region.requests(i).reset();
+                region.responses(i).reset();
+                region.setState(i, SharedMemoryRegion.ACTIVE);
+                return new SharedMemoryClient(region, i);
+            }
+        }
+        throw new IOException("All " + region.channelCount() + " channels of " + file + " are in use");
+    }
+
+    /**
+     * Calls a route with a JSON body.
+     */
+    public CompletableFuture<BinaryRpcClient.Response> call(String verb, String path, String jsonBody) {
+        return call(verb, path, null, jsonBody == null ? new byte[0] : jsonBody.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param contentType format of {@code body}, and of the result, such as {@code application/cbor};
+     *                    null for JSON
+     */
+    public CompletableFuture<BinaryRpcClient.Response> call(String verb, String path, String contentType, byte[] body) {
+        CompletableFuture<BinaryRpcClient.Response> response = new CompletableFuture<>();
+        if (closed) {
+            response.completeExceptionally(new IOException("Client is closed"));
+            return response;
+        }
+        int id = nextId.incrementAndGet();
+        pending.put(id, response);
+        if (closed && pending.remove(id) != null) {
+            // The reader stopped, and failed the pending calls, after the check above
+            response.completeExceptionally(new IOException("Connection is closed"));
+            return response;
+        }
+        ByteBuffer[] frame = {BinaryRpcProtocol.requestHeader(id, verb, path, contentType, body.length), ByteBuffer.wrap(body)};
+        writeLock.lock();
+        try {
+            int round = 0;
+            while (!requests.offer(frame)) {
+                if (closed) {
+                    throw new IOException("Connection is closed");
+                }
+                SharedMemoryRing.idle(round);
+                round = SharedMemoryRing.nextRound(round);
+            }
+        } catch (IOException | RuntimeException e) {
+            pending.remove(id);
+            response.completeExceptionally(e);
+        } finally {
+            writeLock.unlock();
+        }
+        return response;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        region.compareAndSetState(channel, SharedMemoryRegion.ACTIVE, SharedMemoryRegion.RELEASED);
+        failPending(new IOException("Client is closed"));
+    }
+
+    private void readResponses() {
+        int idleRounds = 0;
+        long nextServerCheck = System.nanoTime() + SERVER_CHECK_INTERVAL_NANOS;
+        try {
+            while (!closed) {
+                byte[] frame = responses.poll();
+                if (frame != null) {
+                    BinaryRpcProtocol.ResponseFrame response = BinaryRpcProtocol.readResponse(ByteBuffer.wrap(frame));
+                    CompletableFuture<BinaryRpcClient.Response> call = pending.remove(response.id());
+                    if (call != null) {
+                        call.complete(new BinaryRpcClient.Response(response.statusCode(), response.contentType(), response.body()));
+                    }
+                    idleRounds = 0;
+                    continue;
+                }
+                if (System.nanoTime() - nextServerCheck >= 0) {
+                    if (!region.isServed()) {
+                        throw new IOException("Middleware stopped serving the shared memory file");
+                    }
+                    if (region.state(channel) != SharedMemoryRegion.ACTIVE) {
+                        throw new IOException("Channel was released by the server");
+                    }
+                    nextServerCheck = System.nanoTime() + SERVER_CHECK_INTERVAL_NANOS;
+                }
+                SharedMemoryRing.idle(idleRounds);
+                idleRounds = SharedMemoryRing.nextRound(idleRounds);
+            }
+        } catch (IOException | RuntimeException e) {
+            closed = true;
+            failPending(e);
+        }
+    }
+
+    private void failPending(Exception error) {
+        for (Integer id : pending.keySet()) {
+            CompletableFuture<BinaryRpcClient.Response> call = pending.remove(id);
+            if (call != null) {
+                call.completeExceptionally(error);
+            }
+        }
+    }
+}
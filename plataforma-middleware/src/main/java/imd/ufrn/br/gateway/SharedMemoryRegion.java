@@ -0,0 +1,169 @@
+package imd.ufrn.br.gateway;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The memory-mapped file shared by the {@link SharedMemoryTransport} and its clients. A 64-byte header
+ * (magic, version, channel count, ring size and the server's PID) is followed by the channels, each a
+ * 64-byte control block (state and owner PID) and two {@link SharedMemoryRing}s: requests from the
+ * client and responses from the server.
+ * <p>
+ * A client claims a {@link #FREE} channel by moving it to {@link #CLAIMING}, resets its rings and
+ * makes it {@link #ACTIVE}; it hands it back by moving it to {@link #RELEASED}. Only the server makes
+ * a released channel free again, once no call of the previous owner is still running, so a late
+ * response can never reach the next one.
+ */
+final class SharedMemoryRegion {
+
+    static final int FREE = 0;
+    static final int CLAIMING = 1;
+    static final int ACTIVE = 2;
+    static final int RELEASED = 3;
+
+    private static final int MAGIC = 0x4d575348;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 64;
+    private static final int CONTROL_BYTES = 64;
+
+    private static final int MAGIC_OFFSET = 0;
+    private static final int VERSION_OFFSET = 4;
+    private static final int CHANNELS_OFFSET = 8;
+    private static final int RING_BYTES_OFFSET = 12;
+    private static final int SERVER_PID_OFFSET = 16;
+    private static final int STATE_OFFSET = 0;
+    private static final int OWNER_PID_OFFSET = 8;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private final MappedByteBuffer mapping;
+    private final int channelCount;
+    private final int ringBytes;
+
+    private SharedMemoryRegion(MappedByteBuffer mapping, int channelCount, int ringBytes) {
+        this.mapping = mapping;
+        this.channelCount = channelCount;
+        this.ringBytes = ringBytes;
+    }
+
+    /**
+     * Creates the file, replacing any earlier one, and publishes it to clients.
+     *
+     * @param ringBytes data bytes of each ring; rounded down to a multiple of 64
+     */
+    static SharedMemoryRegion create(Path file, int channelCount, int ringBytes) throws IOException {
+        int capacity = ringBytes & ~63;
+        if (channelCount < 1 || capacity < 1024) {
+            throw new IllegalArgumentException("Need at least one channel and rings of 1024 bytes");
+        }
+        long size = HEADER_BYTES + channelCount * channelBytes(capacity);
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(channelCount + " channels of " + capacity + "-byte rings exceed 2 GB");
+        }
+        MappedByteBuffer mapping;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        INTS.set(mapping, VERSION_OFFSET, VERSION);
+        INTS.set(mapping, CHANNELS_OFFSET, channelCount);
+        INTS.set(mapping, RING_BYTES_OFFSET, capacity);
+        LONGS.set(mapping, SERVER_PID_OFFSET, ProcessHandle.current().pid());
+        INTS.setRelease(mapping, MAGIC_OFFSET, MAGIC);
+        return new SharedMemoryRegion(mapping, channelCount, capacity);
+    }
+
+    /**
+     * Maps a file created by a running server.
+     */
+    static SharedMemoryRegion open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (channel.size() < HEADER_BYTES) {
+                throw new IOException(file + " is not a middleware shared memory file");
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            if ((int) INTS.getAcquire(header, MAGIC_OFFSET) != MAGIC || (int) INTS.get(header, VERSION_OFFSET) != VERSION) {
+                throw new IOException("No middleware is serving " + file);
+            }
+            int channelCount = (int) INTS.get(header, CHANNELS_OFFSET);
+            int ringBytes = (int) INTS.get(header, RING_BYTES_OFFSET);
+            if (channelCount < 1 || ringBytes < 1024 || ringBytes > Integer.MAX_VALUE / 2) {
+                throw new IOException(file + " has an invalid header");
+            }
+            long size = HEADER_BYTES + channelCount * channelBytes(ringBytes);
+            if (size > Integer.MAX_VALUE || channel.size() < size) {
+                throw new IOException(file + " is shorter than its header says");
+            }
+            return new SharedMemoryRegion(channel.map(FileChannel.MapMode.READ_WRITE, 0, size), channelCount, ringBytes);
+        }
+    }
+
+    /**
+     * Tells clients that the server is gone; they fail their pending calls.
+     */
+    void close() {
+        INTS.setRelease(mapping, MAGIC_OFFSET, 0);
+    }
+
+    /**
+     * Whether the server that created the file is still serving it.
+     */
+    boolean isServed() {
+        return (int) INTS.getAcquire(mapping, MAGIC_OFFSET) == MAGIC && isAlive((long) LONGS.get(mapping, SERVER_PID_OFFSET));
+    }
+
+    int channelCount() {
+        return channelCount;
+    }
+
+    int ringBytes() {
+        return ringBytes;
+    }
+
+    int state(int channel) {
+        return (int) INTS.getAcquire(mapping, control(channel) + STATE_OFFSET);
+    }
+
+    void setState(int channel, int state) {
+        INTS.setRelease(mapping, control(channel) + STATE_OFFSET, state);
+    }
+
+    boolean compareAndSetState(int channel, int expected, int state) {
+        return INTS.compareAndSet(mapping, control(channel) + STATE_OFFSET, expected, state);
+    }
+
+    long ownerPid(int channel) {
+        return (long) LONGS.getAcquire(mapping, control(channel) + OWNER_PID_OFFSET);
+    }
+
+    void setOwnerPid(int channel, long pid) {
+        LONGS.setRelease(mapping, control(channel) + OWNER_PID_OFFSET, pid);
+    }
+
+    SharedMemoryRing requests(int channel) {
+        return new SharedMemoryRing(mapping, control(channel) + CONTROL_BYTES, ringBytes);
+    }
+
+    SharedMemoryRing responses(int channel) {
+        return new SharedMemoryRing(mapping, control(channel) + CONTROL_BYTES + SharedMemoryRing.bytesFor(ringBytes), ringBytes);
+    }
+
+    static boolean isAlive(long pid) {
+        return ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false);
+    }
+
+    private int control(int channel) {
+        return (int) (HEADER_BYTES + channel * channelBytes(ringBytes));
+    }
+
+    private static long channelBytes(int ringBytes) {
+        return CONTROL_BYTES + 2L * SharedMemoryRing.bytesFor(ringBytes);
+    }
+}
@@ -0,0 +1,165 @@
+package imd.ufrn.br.gateway;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-producer, single-consumer queue of binary RPC frames in a region of a memory-mapped file,
+ * shared by two processes. The region starts with the consumer's head and the producer's tail, each
+ * on its own cache line, followed by the data. Both are ever-increasing byte positions; a frame is
+ * stored as it goes over TCP, length field first, padded to four bytes, and never split: when it does
+ * not fit before the end of the data, the producer writes a wrap marker and starts over at the
+ * beginning. The producer publishes a frame by moving the tail with release semantics after copying
+ * it in, and the consumer frees its space the same way through the head, so neither side takes a
+ * lock or makes a system call.
+ */
+final class SharedMemoryRing {
+
+    static final int HEADER_BYTES = 128;
+
+    private static final int HEAD_OFFSET = 0;
+    private static final int TAIL_OFFSET = 64;
+    private static final int WRAP_MARKER = -1;
+
+    private static final int SPIN_ROUNDS = Runtime.getRuntime().availableProcessors() < 2 ? 0 : 1000;
+    private static final int YIELD_ROUNDS = 100;
+    private static final int MAX_PARK_SHIFT = 10;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+    private final ByteBuffer mapping;
+    private final int head;
+    private final int tail;
+    private final int data;
+    private final int capacity;
+
+    /**
+     * @param offset   start of the ring in {@code mapping}, a multiple of 64
+     * @param capacity bytes of data, a multiple of 8
+     */
+    SharedMemoryRing(ByteBuffer mapping, int offset, int capacity) {
+        this.mapping = mapping;
+        this.head = offset + HEAD_OFFSET;
+        this.tail = offset + TAIL_OFFSET;
+        this.data = offset + HEADER_BYTES;
+        this.capacity = capacity;
+    }
+
+    static int bytesFor(int capacity) {
+        return HEADER_BYTES + capacity;
+    }
+
+    /**
+     * Empties the ring. Only safe while neither side is using it.
+     */
+    void reset() {
+        LONGS.setRelease(mapping, head, 0L);
+        LONGS.setRelease(mapping, tail, 0L);
+    }
+
+    /**
+     * Appends a frame, given as buffers that start with its length field, and advances the buffers
+     * past what was written.
+     *
+     * @return false, leaving the buffers untouched, when the consumer has not freed enough space yet
+     * @throws IllegalArgumentException when the frame is larger than the whole ring
+     */
+    boolean offer(ByteBuffer[] frame) {
+        long frameBytes = 0;
+        for (ByteBuffer buffer : frame) {
+            frameBytes += buffer.remaining();
+        }
+        if (frameBytes > capacity) {
+            throw new IllegalArgumentException("Frame of " + frameBytes + " bytes exceeds the ring of " + capacity);
+        }
+        int recordBytes = align((int) frameBytes);
+        long tailPosition = (long) LONGS.get(mapping, tail);
+        int position = (int) (tailPosition % capacity);
+        if (recordBytes > capacity - position) {
+            int skipped = capacity - position;
+            if (free(tailPosition) < skipped) {
+                return false;
+            }
+            INTS.set(mapping, data + position, WRAP_MARKER);
+            tailPosition += skipped;
+            LONGS.setRelease(mapping, tail, tailPosition);
+            position = 0;
+        }
+        if (free(tailPosition) < recordBytes) {
+            return false;
+        }
+        int offset = data + position;
+        for (ByteBuffer buffer : frame) {
+            int length = buffer.remaining();
+            mapping.put(offset, buffer, buffer.position(), length);
+            buffer.position(buffer.position() + length);
+            offset += length;
+        }
+        LONGS.setRelease(mapping, tail, tailPosition + recordBytes);
+        return true;
+    }
+
+    /**
+     * Takes the next frame off the ring.
+     *
+     * @return the frame after its length field, or null when the ring is empty
+     * @throws IllegalStateException when the ring holds something other than frames
+     */
+    byte[] poll() {
+        long headPosition = (long) LONGS.get(mapping, head);
+        while (headPosition != (long) LONGS.getAcquire(mapping, tail)) {
+            int position = (int) (headPosition % capacity);
+            int length = (int) INTS.get(mapping, data + position);
+            if (length == WRAP_MARKER) {
+                headPosition += capacity - position;
+                LONGS.setRelease(mapping, head, headPosition);
+                continue;
+            }
+            if (length < 0 || length > capacity - position - BinaryRpcProtocol.LENGTH_BYTES) {
+                throw new IllegalStateException("Corrupt frame length " + length + " at ring position " + position);
+            }
+            byte[] frame = new byte[length];
+            mapping.get(data + position + BinaryRpcProtocol.LENGTH_BYTES, frame);
+            LONGS.setRelease(mapping, head, headPosition + align(BinaryRpcProtocol.LENGTH_BYTES + length));
+            return frame;
+        }
+        return null;
+    }
+
+    /**
+     * Waits a little before checking a ring again: busy-spins at first, for the lowest latency, then
+     * yields, then parks for up to about a millisecond as the wait goes on. There is no way to signal
+     * another process, so even a parked side notices new frames only when it wakes up. On a single CPU
+     * spinning would only keep the other side from running, so it starts by yielding.
+     *
+     * @param round how many times in a row the ring was found empty, or full
+     */
+    static void idle(int round) {
+        if (round < SPIN_ROUNDS) {
+            Thread.onSpinWait();
+        } else if (round < SPIN_ROUNDS + YIELD_ROUNDS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(1000L << Math.min(MAX_PARK_SHIFT, round - SPIN_ROUNDS - YIELD_ROUNDS));
+        }
+    }
+
+    /**
+     * The next idle round, saturating so that a long idle period cannot wrap back to spinning.
+     */
+    static int nextRound(int round) {
+        return round == Integer.MAX_VALUE ? round : round + 1;
+    }
+
+    private long free(long tailPosition) {
+        return capacity - (tailPosition - (long) LONGS.getAcquire(mapping, head));
+    }
+
+    private static int align(int bytes) {
+        return (bytes + 3) & ~3;
+    }
+}
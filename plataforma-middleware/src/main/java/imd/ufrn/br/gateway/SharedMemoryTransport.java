@@ -0,0 +1,243 @@
+package imd.ufrn.br.gateway;
+
+import imd.ufrn.br.infra.VirtualThreads;
+import imd.ufrn.br.lifecycle.Lifecycle;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Binary RPC between processes on the same host through a memory-mapped file, for callers to which
+ * even a Unix domain socket's system calls are too slow. Each client claims a channel of the file
+ * ({@link SharedMemoryRegion}) with its own pair of lock-free rings ({@link SharedMemoryRing}), and
+ * writes the same frames it would send to the {@link BinaryRpcTransport}; the calls go through the
+ * same {@link GatewayDispatcher}, RouteRegistry and Broker, and their response frames come back on
+ * the channel's response ring, in whatever order they complete.
+ * <p>
+ * A single poller thread watches every channel, busy-spinning for a while after the last frame and
+ * parking for longer and longer as it stays idle (see {@link SharedMemoryRing#idle}); calls run on the
+ * worker pool (or on virtual threads). Channels whose owner released them, or whose owner process
+ * died, are reclaimed once their last call has been answered.
+ *
+ * @see SharedMemoryClient
+ */
+public class SharedMemoryTransport implements Lifecycle {
+
+    private static final long HOUSEKEEPING_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final GatewayDispatcher dispatcher;
+    private final int channelCount;
+    private final int ringBytes;
+    private final int workerThreads;
+    private final boolean virtualThreads;
+
+    private Path file;
+    private SharedMemoryRegion region;
+    private Channel[] channels;
+    private ExecutorService workers;
+    private Thread pollerThread;
+    private volatile boolean running = false;
+
+    /**
+     * Server side of one channel. Calls complete on any worker, so writers of the response ring take
+     * turns through {@code writeLock}.
+     */
+    private static final class Channel {
+        final int index;
+        final SharedMemoryRing requests;
+        final SharedMemoryRing responses;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final ReentrantLock writeLock = new ReentrantLock();
+
+        Channel(SharedMemoryRegion region, int index) {
+            this.index = index;
+            this.requests = region.requests(index);
+            this.responses = region.responses(index);
+        }
+    }
+
+    /**
+     * @param channelCount  clients that can be connected at once
+     * @param ringBytes     size of each ring; frames larger than this are refused
+     * @param workerThreads size of the pool calls run on, unless {@code virtualThreads} is set
+     */
+    public SharedMemoryTransport(GatewayDispatcher dispatcher, int channelCount, int ringBytes, int workerThreads,
+                                 boolean virtualThreads) {
+        this.dispatcher = dispatcher;
+        this.channelCount = channelCount;
+        this.ringBytes = ringBytes;
+        this.workerThreads = Math.max(1, workerThreads);
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Creates {@code file}, replacing a file left by an earlier run, and starts serving it. The file is
+     * best placed on a memory-backed file system such as {@code /dev/shm}.
+     */
+    public void start(Path file) throws IOException {
+        if (running) {
+            return;
+        }
+        region = SharedMemoryRegion.create(file, channelCount, ringBytes);
+        this.file = file;
+        channels = new Channel[channelCount];
+        for (int i = 0; i < channelCount; i++) {
+            channels[i] = new Channel(region, i);
+        }
+
+        workers = virtualThreads ? VirtualThreads.newPerTaskExecutor("SharedMemoryTransport-worker-") : null;
+        if (workers == null) {
+            AtomicInteger workerIds = new AtomicInteger();
+            workers = Executors.newFixedThreadPool(workerThreads, r -> {
+                Thread t = new Thread(r, "SharedMemoryTransport-worker-" + workerIds.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        running = true;
+        pollerThread = new Thread(this::pollLoop, "SharedMemoryTransport-poller");
+        pollerThread.setDaemon(true);
+        pollerThread.start();
+    }
+
+    @Override
+    public void start() throws Exception {
+        start(Path.of(System.getProperty("java.io.tmpdir"), "middleware.shm"));
+    }
+
+    @Override
+    public void stop() throws Exception {
+        if (!running) {
+            return;
+        }
+        running = false;
+        pollerThread.join(5000);
+        region.close();
+        Files.deleteIfExists(file);
+        workers.shutdown();
+        if (!workers.awaitTermination(5, TimeUnit.SECONDS)) {
+            workers.shutdownNow();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void pollLoop() {
+        int idleRounds = 0;
+        long nextHousekeeping = System.nanoTime() + HOUSEKEEPING_INTERVAL_NANOS;
+        while (running) {
+            boolean received = false;
+            for (Channel channel : channels) {
+                if (region.state(channel.index) == SharedMemoryRegion.ACTIVE) {
+                    received |= pollChannel(channel);
+                }
+            }
+            if (received) {
+                idleRounds = 0;
+            } else {
+                SharedMemoryRing.idle(idleRounds);
+                idleRounds = SharedMemoryRing.nextRound(idleRounds);
+            }
+            if (System.nanoTime() - nextHousekeeping >= 0) {
+                reclaimChannels();
+                nextHousekeeping = System.nanoTime() + HOUSEKEEPING_INTERVAL_NANOS;
+            }
+        }
+    }
+
+    /**
+     * Dispatches the frames waiting on one channel, stopping at {@link BinaryRpcConnection#MAX_IN_FLIGHT}
+     * running calls so that a client cannot queue unbounded work.
+     */
+    private boolean pollChannel(Channel channel) {
+        boolean received = false;
+        while (channel.inFlight.get() < BinaryRpcConnection.MAX_IN_FLIGHT) {
+            BinaryRpcProtocol.RequestFrame frame;
+            try {
+                byte[] bytes = channel.requests.poll();
+                if (bytes == null) {
+                    break;
+                }
+                frame = BinaryRpcProtocol.readRequest(ByteBuffer.wrap(bytes));
+            } catch (IllegalArgumentException | IllegalStateException | BufferUnderflowException e) {
+                System.err.println("SharedMemoryTransport: Malformed frame, releasing channel " + channel.index
+                        + " - " + e.getMessage());
+                region.setState(channel.index, SharedMemoryRegion.RELEASED);
+                break;
+            }
+            received = true;
+            dispatch(channel, frame);
+        }
+        return received;
+    }
+
+    private void dispatch(Channel channel, BinaryRpcProtocol.RequestFrame frame) {
+        channel.inFlight.incrementAndGet();
+        try {
+            workers.execute(() -> BinaryRpcConnection.invoke(dispatcher, workers, frame)
+                    .thenAccept(encoded -> respond(channel, frame.id(), encoded)));
+        } catch (RejectedExecutionException e) {
+            channel.inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Writes a response frame, waiting for the client to make room. The frame is dropped if the
+     * channel is released, or the transport stopped, meanwhile, as nobody is left to read it.
+     */
+    private void respond(Channel channel, int id, BinaryRpcConnection.EncodedFrame encoded) {
+        try {
+            long size = encoded.size();
+            if (size > region.ringBytes()) {
+                encoded.release();
+                encoded = BinaryRpcConnection.encode(id, GatewayResponse.error(500, "Internal Server Error",
+                        "Response of " + size + " bytes exceeds the shared memory ring of " + region.ringBytes()));
+            }
+            ByteBuffer[] buffers = encoded.buffers().toArray(new ByteBuffer[0]);
+            channel.writeLock.lock();
+            try {
+                int round = 0;
+                while (!channel.responses.offer(buffers) && running
+                        && region.state(channel.index) == SharedMemoryRegion.ACTIVE) {
+                    SharedMemoryRing.idle(round);
+                    round = SharedMemoryRing.nextRound(round);
+                }
+            } finally {
+                channel.writeLock.unlock();
+            }
+        } finally {
+            encoded.release();
+            channel.inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Marks the channels of dead clients as released, and frees released channels with no call left.
+     */
+    private void reclaimChannels() {
+        for (Channel channel : channels) {
+            int state = region.state(channel.index);
+            if (state == SharedMemoryRegion.ACTIVE && !SharedMemoryRegion.isAlive(region.ownerPid(channel.index))) {
+                region.setState(channel.index, SharedMemoryRegion.RELEASED);
+                state = SharedMemoryRegion.RELEASED;
+            }
+            if (state == SharedMemoryRegion.RELEASED && channel.inFlight.get() == 0) {
+                region.setOwnerPid(channel.index, 0);
+                region.setState(channel.index, SharedMemoryRegion.FREE);
+            }
+        }
+    }
+}
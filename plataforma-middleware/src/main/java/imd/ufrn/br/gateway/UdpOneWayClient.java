@@ -0,0 +1,50 @@
+package imd.ufrn.br.gateway;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.net.SocketAddress;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sends fire-and-forget calls to the {@link UdpTransport}. Delivery is not confirmed: a datagram
+ * may be lost, dropped by an overloaded server, or refused because its route is not one-way, and
+ * the sender is never told.
+ */
+public class UdpOneWayClient implements AutoCloseable {
+
+    private final DatagramChannel channel;
+
+    public UdpOneWayClient(String host, int port) throws IOException {
+        this(new InetSocketAddress(host, port));
+    }
+
+    public UdpOneWayClient(SocketAddress address) throws IOException {
+        this.channel = DatagramChannel.open();
+        this.channel.connect(address);
+    }
+
+    /**
+     * Sends a call with a JSON body.
+     */
+    public void send(String verb, String path, String jsonBody) throws IOException {
+        send(verb, path, null, jsonBody == null ? new byte[0] : jsonBody.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param contentType format of {@code body}, such as {@code application/cbor}; null for JSON
+     */
+    public void send(String verb, String path, String contentType, byte[] body) throws IOException {
+        try {
+            channel.write(BinaryRpcProtocol.datagram(verb, path, contentType, body));
+        } catch (PortUnreachableException e) {
+            // An earlier datagram found no listener; one-way sends do not report that
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
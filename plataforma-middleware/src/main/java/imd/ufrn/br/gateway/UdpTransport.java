@@ -0,0 +1,195 @@
+package imd.ufrn.br.gateway;
+
+import imd.ufrn.br.infra.MetricsCollector;
+import imd.ufrn.br.lifecycle.Lifecycle;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fire-and-forget invocations over UDP. Each datagram carries one call in the compact form of
+ * {@link BinaryRpcProtocol#datagram}; nothing is sent back. Only {@link imd.ufrn.br.annotations.OneWay}
+ * routes are invoked, through the same {@link GatewayDispatcher} as HTTP.
+ * <p>
+ * A single receiver thread drains every datagram that is ready, up to {@link #MAX_BATCH} at a time,
+ * and hands the batch to a bounded worker pool as one task. When the pool's queue is full the batch
+ * is dropped rather than letting the socket buffer back up, as a one-way caller would not learn of
+ * the delay anyway. Received, dropped and malformed datagrams, and calls that fail, are counted in
+ * the metrics.
+ */
+public class UdpTransport implements Lifecycle {
+
+    static final int MAX_BATCH = 64;
+
+    private static final int MAX_DATAGRAM_BYTES = 65507;
+    private static final int RECEIVE_BUFFER_BYTES = 4 * 1024 * 1024;
+
+    private final GatewayDispatcher dispatcher;
+    private final int workerThreads;
+    private final int queueCapacity;
+    private final MetricsCollector metricsCollector;
+
+    private DatagramChannel channel;
+    private Selector selector;
+    private ThreadPoolExecutor workers;
+    private Thread receiverThread;
+    private volatile boolean running = false;
+
+    /**
+     * @param workerThreads threads invoking the received calls
+     * @param queueCapacity batches waiting for a worker before further batches are dropped
+     */
+    public UdpTransport(GatewayDispatcher dispatcher, int workerThreads, int queueCapacity,
+                        MetricsCollector metricsCollector) {
+        this.dispatcher = dispatcher;
+        this.workerThreads = Math.max(1, workerThreads);
+        this.queueCapacity = Math.max(1, queueCapacity);
+        this.metricsCollector = metricsCollector;
+    }
+
+    public void start(int port) throws IOException {
+        start(new InetSocketAddress(port));
+    }
+
+    public void start(SocketAddress address) throws IOException {
+        if (running) {
+            return;
+        }
+        AtomicInteger workerIds = new AtomicInteger();
+        workers = new ThreadPoolExecutor(workerThreads, workerThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread t = new Thread(r, "UdpTransport-worker-" + workerIds.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+
+        channel = DatagramChannel.open();
+        try {
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, RECEIVE_BUFFER_BYTES);
+        } catch (IOException | UnsupportedOperationException e) {
+            System.err.println("UdpTransport: Could not enlarge the receive buffer - " + e.getMessage());
+        }
+        try {
+            channel.bind(address);
+        } catch (IOException e) {
+            channel.close();
+            workers.shutdown();
+            throw e;
+        }
+        channel.configureBlocking(false);
+        selector = Selector.open();
+        channel.register(selector, SelectionKey.OP_READ);
+
+        running = true;
+        receiverThread = new Thread(this::receiveLoop, "UdpTransport-receiver");
+        receiverThread.setDaemon(true);
+        receiverThread.start();
+    }
+
+    @Override
+    public void start() throws Exception {
+        start(8086);
+    }
+
+    @Override
+    public void stop() throws Exception {
+        if (!running) {
+            return;
+        }
+        running = false;
+        selector.wakeup();
+        receiverThread.join(5000);
+        selector.close();
+        channel.close();
+        workers.shutdown();
+        if (!workers.awaitTermination(5, TimeUnit.SECONDS)) {
+            workers.shutdownNow();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void receiveLoop() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_BYTES);
+        while (running) {
+            try {
+                selector.select();
+                selector.selectedKeys().clear();
+                List<byte[]> batch = new ArrayList<>();
+                while (batch.size() < MAX_BATCH) {
+                    buffer.clear();
+                    if (channel.receive(buffer) == null) {
+                        break;
+                    }
+                    buffer.flip();
+                    byte[] datagram = new byte[buffer.remaining()];
+                    buffer.get(datagram);
+                    batch.add(datagram);
+                }
+                if (!batch.isEmpty()) {
+                    submit(batch);
+                }
+            } catch (ClosedSelectorException e) {
+                return;
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("UdpTransport: Error receiving datagram - " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private void submit(List<byte[]> batch) {
+        count("udp_datagrams_received_total", batch.size());
+        try {
+            workers.execute(() -> batch.forEach(this::invoke));
+        } catch (RejectedExecutionException e) {
+            count("udp_datagrams_dropped_total", batch.size());
+        }
+    }
+
+    private void invoke(byte[] datagram) {
+        BinaryRpcProtocol.RequestFrame call;
+        try {
+            call = BinaryRpcProtocol.readDatagram(ByteBuffer.wrap(datagram));
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            count("udp_datagrams_malformed_total", 1);
+            return;
+        }
+        try {
+            dispatcher.dispatchOneWay(call.verb(), call.path(), new ByteArrayInputStream(call.body()), call.contentType())
+                    .whenComplete((response, error) -> {
+                        if (error != null || response.statusCode() >= 400) {
+                            count("udp_invocations_failed_total", 1);
+                        }
+                    });
+        } catch (RuntimeException e) {
+            count("udp_invocations_failed_total", 1);
+        }
+    }
+
+    private void count(String counter, long delta) {
+        if (metricsCollector != null) {
+            metricsCollector.addToCounter(counter, delta);
+        }
+    }
+}
@@ -0,0 +1,486 @@
+package imd.ufrn.br.gateway;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.NullNode;
+import imd.ufrn.br.infra.BufferPool;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A connection of the {@link NioHttpGateway} after a WebSocket upgrade (RFC 6455). Each message is one
+ * call, answered by one message carrying the call's ID, so that many calls can be outstanding on the
+ * connection and each result is pushed as soon as it is ready, in whatever order that is:
+ * <ul>
+ *   <li>a text message is a JSON call {@code {"id", "verb", "path", "params"}}, as in a batch, and is
+ *       answered by {@code {"id", "status", "body"}};</li>
+ *   <li>a binary message is a request frame of the {@link BinaryRpcProtocol} without its length field,
+ *       and is answered by a response frame without it.</li>
+ * </ul>
+ * As on the binary RPC transport, reading pauses once {@link BinaryRpcConnection#MAX_IN_FLIGHT} calls
+ * are running, or while the client is not taking its results. Pings are answered; protocol errors and
+ * messages over the gateway's request size limit close the connection with the matching close code.
+ */
+final class WebSocketConnection implements NioEventLoop.Handler {
+
+    private static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int INITIAL_BUFFER_SIZE = 8 * 1024;
+
+    private static final int OPCODE_CONTINUATION = 0x0;
+    private static final int OPCODE_TEXT = 0x1;
+    private static final int OPCODE_BINARY = 0x2;
+    private static final int OPCODE_CLOSE = 0x8;
+    private static final int OPCODE_PING = 0x9;
+    private static final int OPCODE_PONG = 0xA;
+
+    private static final int CLOSE_PROTOCOL_ERROR = 1002;
+    private static final int CLOSE_TOO_BIG = 1009;
+
+    private final NioHttpGateway gateway;
+    private final NioEventLoop loop;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final ArrayDeque<ByteBuffer> pendingWrites = new ArrayDeque<>();
+    private final ArrayDeque<byte[]> pooledChunks = new ArrayDeque<>();
+
+    private ByteBuffer readBuffer;
+    private int messageOpcode = -1;
+    private ByteArrayOutputStream fragments;
+    private int inFlight;
+    private boolean closeAfterWrite = false;
+    private boolean closed = false;
+    private long lastActivity = System.currentTimeMillis();
+
+    private record Encoded(List<ByteBuffer> buffers, List<byte[]> pooledChunks) {}
+
+    /**
+     * @param readBuffer bytes the client sent after its upgrade request, in write mode
+     */
+    WebSocketConnection(NioHttpGateway gateway, NioEventLoop loop, SocketChannel channel, SelectionKey key,
+                        ByteBuffer readBuffer) {
+        this.gateway = gateway;
+        this.loop = loop;
+        this.channel = channel;
+        this.key = key;
+        this.readBuffer = readBuffer;
+    }
+
+    /**
+     * The {@code Sec-WebSocket-Accept} value answering a client's {@code Sec-WebSocket-Key}.
+     */
+    static String acceptKey(String clientKey) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1")
+                    .digest((clientKey + ACCEPT_GUID).getBytes(StandardCharsets.ISO_8859_1));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+
+    /**
+     * Sends the handshake response and handles any frames that arrived with the upgrade request.
+     */
+    void start(byte[] handshakeResponse) {
+        pendingWrites.add(ByteBuffer.wrap(handshakeResponse));
+        try {
+            writePending();
+            processFrames();
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    @Override
+    public void onReadable() {
+        try {
+            if (!readBuffer.hasRemaining()) {
+                growReadBuffer(readBuffer.capacity() * 2);
+            }
+            int read = channel.read(readBuffer);
+            if (read < 0) {
+                close();
+                return;
+            }
+            lastActivity = System.currentTimeMillis();
+            processFrames();
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    @Override
+    public void onWritable() {
+        try {
+            writePending();
+            processFrames();
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    @Override
+    public boolean isIdleSince(long threshold) {
+        return inFlight == 0 && pendingWrites.isEmpty() && lastActivity < threshold;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        key.cancel();
+        pendingWrites.clear();
+        pooledChunks.forEach(BufferPool.shared()::release);
+        pooledChunks.clear();
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void processFrames() throws IOException {
+        while (!closed && !closeAfterWrite && inFlight < BinaryRpcConnection.MAX_IN_FLIGHT && pendingWrites.isEmpty()) {
+            if (!processFrame()) {
+                break;
+            }
+        }
+        updateInterest();
+    }
+
+    /**
+     * Handles one complete frame from the front of the read buffer.
+     *
+     * @return false when more bytes are needed, or the connection is closing
+     */
+    private boolean processFrame() throws IOException {
+        int available = readBuffer.position();
+        if (available < 2) {
+            return false;
+        }
+        int first = readBuffer.get(0) & 0xff;
+        int second = readBuffer.get(1) & 0xff;
+        boolean fin = (first & 0x80) != 0;
+        int opcode = first & 0x0f;
+        int headerLength = 2;
+        long payloadLength = second & 0x7f;
+        if (payloadLength == 126) {
+            headerLength = 4;
+            if (available < headerLength) {
+                return false;
+            }
+            payloadLength = readBuffer.getShort(2) & 0xffff;
+        } else if (payloadLength == 127) {
+            headerLength = 10;
+            if (available < headerLength) {
+                return false;
+            }
+            payloadLength = readBuffer.getLong(2);
+        }
+        if ((first & 0x70) != 0 || (second & 0x80) == 0) {
+            closeWith(CLOSE_PROTOCOL_ERROR, "Frames must be masked and use no extensions");
+            return false;
+        }
+        boolean control = (opcode & 0x8) != 0;
+        if (control && (!fin || payloadLength > 125)) {
+            closeWith(CLOSE_PROTOCOL_ERROR, "Control frames must be whole and at most 125 bytes");
+            return false;
+        }
+        long messageLength = payloadLength + (fragments == null || control ? 0 : fragments.size());
+        if (payloadLength < 0 || messageLength > gateway.maxRequestBytes()) {
+            closeWith(CLOSE_TOO_BIG, "Message exceeds " + gateway.maxRequestBytes() + " bytes");
+            return false;
+        }
+        int total = headerLength + 4 + (int) payloadLength;
+        if (available < total) {
+            if (readBuffer.capacity() < total) {
+                growReadBuffer(total);
+            }
+            return false;
+        }
+
+        byte[] payload = new byte[(int) payloadLength];
+        int maskOffset = headerLength;
+        int payloadOffset = headerLength + 4;
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] = (byte) (readBuffer.get(payloadOffset + i) ^ readBuffer.get(maskOffset + (i & 3)));
+        }
+        consume(total);
+
+        switch (opcode) {
+            case OPCODE_TEXT, OPCODE_BINARY -> {
+                if (messageOpcode >= 0) {
+                    closeWith(CLOSE_PROTOCOL_ERROR, "New message before the previous one ended");
+                    return false;
+                }
+                if (fin) {
+                    return dispatch(opcode, payload);
+                } else {
+                    messageOpcode = opcode;
+                    fragments = new ByteArrayOutputStream();
+                    fragments.write(payload);
+                }
+            }
+            case OPCODE_CONTINUATION -> {
+                if (messageOpcode < 0) {
+                    closeWith(CLOSE_PROTOCOL_ERROR, "Continuation without a message");
+                    return false;
+                }
+                fragments.write(payload);
+                if (fin) {
+                    int messageType = messageOpcode;
+                    byte[] message = fragments.toByteArray();
+                    messageOpcode = -1;
+                    fragments = null;
+                    return dispatch(messageType, message);
+                }
+            }
+            case OPCODE_PING -> {
+                pendingWrites.add(frameHeader(OPCODE_PONG, payload.length));
+                pendingWrites.add(ByteBuffer.wrap(payload));
+                writePending();
+            }
+            case OPCODE_PONG -> {
+            }
+            case OPCODE_CLOSE -> {
+                // Echo the client's status code, then close once it has been sent
+                closeAfterWrite = true;
+                int echoed = Math.min(payload.length, 2);
+                pendingWrites.add(frameHeader(OPCODE_CLOSE, echoed));
+                pendingWrites.add(ByteBuffer.wrap(payload, 0, echoed));
+                writePending();
+            }
+            default -> {
+                closeWith(CLOSE_PROTOCOL_ERROR, "Unknown opcode " + opcode);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Starts the call a message carries. Without a worker pool the call is invoked on the loop, like an
+     * HTTP request, and a reply that is ready at once is queued right away.
+     *
+     * @return false when the message was malformed and the connection is closing
+     */
+    private boolean dispatch(int opcode, byte[] message) throws IOException {
+        BinaryRpcProtocol.RequestFrame frame = null;
+        if (opcode == OPCODE_BINARY) {
+            try {
+                frame = BinaryRpcProtocol.readRequest(ByteBuffer.wrap(message));
+            } catch (IllegalArgumentException | BufferUnderflowException e) {
+                closeWith(CLOSE_PROTOCOL_ERROR, "Malformed binary frame");
+                return false;
+            }
+        }
+        BinaryRpcProtocol.RequestFrame binaryCall = frame;
+        inFlight++;
+        if (gateway.workers() == null) {
+            CompletableFuture<Encoded> reply = invoke(binaryCall, message);
+            if (reply.isDone()) {
+                enqueue(reply.join());
+                writePending();
+            } else {
+                reply.thenAccept(encoded -> loop.execute(() -> finish(encoded)));
+            }
+            return true;
+        }
+        try {
+            gateway.workers().execute(() -> invoke(binaryCall, message).thenAccept(encoded -> loop.execute(() -> finish(encoded))));
+        } catch (RejectedExecutionException e) {
+            close();
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Invokes one call and encodes the reply on the thread that completes it, or on a stream writer
+     * when the result is streamed, so the event loop only sees finished buffers.
+     *
+     * @param binaryCall the call of a binary message, or null to read {@code message} as a JSON call
+     */
+    private CompletableFuture<Encoded> invoke(BinaryRpcProtocol.RequestFrame binaryCall, byte[] message) {
+        Executor encoders = gateway.workers() != null ? gateway.workers() : gateway.streamWriters();
+        if (binaryCall != null) {
+            return BinaryRpcConnection.invoke(gateway.dispatcher(), encoders, binaryCall)
+                    .thenApply(WebSocketConnection::encodeBinary);
+        }
+
+        JsonNode call;
+        try {
+            call = MAPPER.readTree(message);
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.completedFuture(encodeJson(NullNode.getInstance(),
+                    GatewayResponse.error(400, "Bad Request", "Invalid call JSON: " + e.getOriginalMessage())));
+        } catch (IOException e) {
+            return CompletableFuture.completedFuture(encodeJson(NullNode.getInstance(),
+                    GatewayResponse.error(400, "Bad Request", "Could not read call: " + e.getMessage())));
+        }
+        if (call == null || !call.isObject()) {
+            return CompletableFuture.completedFuture(encodeJson(NullNode.getInstance(),
+                    GatewayResponse.error(400, "Bad Request", "A call must be a JSON object.")));
+        }
+        JsonNode id = call.hasNonNull("id") ? call.get("id") : NullNode.getInstance();
+        CompletableFuture<GatewayResponse> response;
+        try {
+            response = gateway.dispatcher().dispatchJsonCall(call);
+        } catch (RuntimeException e) {
+            response = CompletableFuture.completedFuture(
+                    GatewayResponse.error(500, "Internal Server Error", "Gateway error: " + e.getMessage()));
+        }
+        return response.thenCompose(result -> result.chunked()
+                        ? CompletableFuture.supplyAsync(() -> encodeJson(id, result), encoders)
+                        : CompletableFuture.completedFuture(encodeJson(id, result)))
+                .exceptionally(error -> encodeJson(id,
+                        GatewayResponse.error(500, "Internal Server Error", "Gateway error: " + error.getMessage())));
+    }
+
+    private static Encoded encodeBinary(BinaryRpcConnection.EncodedFrame frame) {
+        List<ByteBuffer> buffers = new ArrayList<>(frame.buffers());
+        long payloadLength = frame.size() - BinaryRpcProtocol.LENGTH_BYTES;
+        ByteBuffer header = buffers.get(0);
+        header.position(header.position() + BinaryRpcProtocol.LENGTH_BYTES);
+        buffers.add(0, frameHeader(OPCODE_BINARY, payloadLength));
+        return new Encoded(buffers, frame.pooledChunks());
+    }
+
+    private static Encoded encodeJson(JsonNode id, GatewayResponse response) {
+        BufferChainOutputStream out = new BufferChainOutputStream();
+        try {
+            out.write(("{\"id\":" + MAPPER.writeValueAsString(id) + ",\"status\":" + response.statusCode() + ",\"body\":")
+                    .getBytes(StandardCharsets.UTF_8));
+            if (response.isStreamed()) {
+                response.bodyWriter().writeTo(out);
+            } else {
+                out.write(response.body());
+            }
+            out.write('}');
+        } catch (IOException | RuntimeException e) {
+            out.release();
+            System.err.println("NioHttpGateway: Error writing WebSocket response - " + e.getMessage());
+            return encodeJson(id, GatewayResponse.error(500, "Internal Server Error", "Gateway error: " + e.getMessage()));
+        }
+        List<ByteBuffer> buffers = new ArrayList<>(out.toBuffers());
+        buffers.add(0, frameHeader(OPCODE_TEXT, out.size()));
+        return new Encoded(buffers, out.chunks());
+    }
+
+    private void finish(Encoded encoded) {
+        enqueue(encoded);
+        if (closed) {
+            return;
+        }
+        try {
+            writePending();
+            processFrames();
+        } catch (IOException e) {
+            close();
+        }
+    }
+
+    private void enqueue(Encoded encoded) {
+        inFlight--;
+        if (closed) {
+            encoded.pooledChunks().forEach(BufferPool.shared()::release);
+            return;
+        }
+        pendingWrites.addAll(encoded.buffers());
+        pooledChunks.addAll(encoded.pooledChunks());
+    }
+
+    private void closeWith(int code, String reason) throws IOException {
+        byte[] reasonBytes = reason.getBytes(StandardCharsets.UTF_8);
+        int reasonLength = Math.min(reasonBytes.length, 123);
+        ByteBuffer payload = ByteBuffer.allocate(2 + reasonLength).putShort((short) code).put(reasonBytes, 0, reasonLength);
+        closeAfterWrite = true;
+        pendingWrites.add(frameHeader(OPCODE_CLOSE, payload.capacity()));
+        pendingWrites.add(payload.flip());
+        writePending();
+    }
+
+    private static ByteBuffer frameHeader(int opcode, long payloadLength) {
+        ByteBuffer header = ByteBuffer.allocate(10);
+        header.put((byte) (0x80 | opcode));
+        if (payloadLength < 126) {
+            header.put((byte) payloadLength);
+        } else if (payloadLength <= 0xffff) {
+            header.put((byte) 126).putShort((short) payloadLength);
+        } else {
+            header.put((byte) 127).putLong(payloadLength);
+        }
+        return header.flip();
+    }
+
+    private void writePending() throws IOException {
+        if (!pendingWrites.isEmpty()) {
+            channel.write(pendingWrites.toArray(new ByteBuffer[0]));
+            while (!pendingWrites.isEmpty() && !pendingWrites.peek().hasRemaining()) {
+                ByteBuffer written = pendingWrites.poll();
+                if (!pooledChunks.isEmpty() && written.hasArray() && written.array() == pooledChunks.peek()) {
+                    BufferPool.shared().release(pooledChunks.poll());
+                }
+            }
+            lastActivity = System.currentTimeMillis();
+        }
+        if (pendingWrites.isEmpty() && closeAfterWrite) {
+            close();
+        }
+    }
+
+    private void updateInterest() {
+        if (closed) {
+            return;
+        }
+        int ops = 0;
+        if (!pendingWrites.isEmpty()) {
+            ops |= SelectionKey.OP_WRITE;
+        } else if (!closeAfterWrite && inFlight < BinaryRpcConnection.MAX_IN_FLIGHT) {
+            ops |= SelectionKey.OP_READ;
+        }
+        key.interestOps(ops);
+    }
+
+    private void consume(int length) {
+        readBuffer.flip();
+        readBuffer.position(length);
+        if (readBuffer.capacity() > INITIAL_BUFFER_SIZE && readBuffer.remaining() <= INITIAL_BUFFER_SIZE) {
+            ByteBuffer shrunk = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+            shrunk.put(readBuffer);
+            readBuffer = shrunk;
+        } else {
+            readBuffer.compact();
+        }
+    }
+
+    private void growReadBuffer(int minCapacity) {
+        // Room for the largest message's payload plus a frame header and mask
+        int capacity = Math.min(Math.max(minCapacity, readBuffer.capacity() * 2), gateway.maxRequestBytes() + 14);
+        if (capacity <= readBuffer.capacity()) {
+            return;
+        }
+        ByteBuffer grown = ByteBuffer.allocate(capacity);
+        readBuffer.flip();
+        grown.put(readBuffer);
+        readBuffer = grown;
+    }
+}
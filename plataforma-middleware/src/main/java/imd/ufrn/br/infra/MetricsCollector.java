@@ -3,9 +3,12 @@ package imd.ufrn.br.infra;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
 
 /**
- * Minimal metrics collector for invocation counts and average latency.
+ * Minimal metrics collector for invocation counts and average latency, plus named counters and
+ * gauges for the platform's own components. Names may carry Prometheus-style labels, e.g.
+ * {@code pool_rejected_total{pool="calculator"}}.
  */
 public class MetricsCollector {
 
@@ -21,6 +24,8 @@ public class MetricsCollector {
     }
 
     private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, DoubleSupplier> gauges = new ConcurrentHashMap<>();
 
     public void record(String objectId, String methodName, long latencyMs) {
         String key = objectId + "#" + methodName;
@@ -43,4 +48,33 @@ public class MetricsCollector {
     public Map<String, Stats> getAllStats() {
         return new java.util.HashMap<>(stats);
     }
+
+    public void incrementCounter(String name) {
+        counters.computeIfAbsent(name, k -> new LongAdder()).increment();
+    }
+
+    public void addToCounter(String name, long delta) {
+        counters.computeIfAbsent(name, k -> new LongAdder()).add(delta);
+    }
+
+    public long getCounter(String name) {
+        LongAdder counter = counters.get(name);
+        return counter == null ? 0L : counter.longValue();
+    }
+
+    public Map<String, Long> getAllCounters() {
+        Map<String, Long> snapshot = new java.util.TreeMap<>();
+        counters.forEach((name, counter) -> snapshot.put(name, counter.longValue()));
+        return snapshot;
+    }
+
+    public void registerGauge(String name, DoubleSupplier gauge) {
+        gauges.put(name, gauge);
+    }
+
+    public Map<String, Double> getAllGauges() {
+        Map<String, Double> snapshot = new java.util.TreeMap<>();
+        gauges.forEach((name, gauge) -> snapshot.put(name, gauge.getAsDouble()));
+        return snapshot;
+    }
 }
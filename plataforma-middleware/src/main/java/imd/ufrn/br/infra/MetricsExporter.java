@@ -9,7 +9,9 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
 import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Executors;
 
 public class MetricsExporter implements HttpHandler, Lifecycle {
@@ -83,9 +85,30 @@ public class MetricsExporter implements HttpHandler, Lifecycle {
             }
         }
         
+        appendSeries(response, "counter", metricsCollector.getAllCounters());
+        appendSeries(response, "gauge", metricsCollector.getAllGauges());
+        
         sendResponse(exchange, 200, response.toString());
     }
     
+    private void appendSeries(StringBuilder response, String type, Map<String, ? extends Number> series) {
+        Set<String> declared = new HashSet<>();
+        for (Map.Entry<String, ? extends Number> entry : series.entrySet()) {
+            String name = entry.getKey();
+            int labelStart = name.indexOf('{');
+            String baseName = labelStart < 0 ? name : name.substring(0, labelStart);
+            if (declared.add(baseName)) {
+                response.append("# TYPE ").append(baseName).append(' ').append(type).append('\n');
+            }
+            Number value = entry.getValue();
+            if (value instanceof Double) {
+                response.append(name).append(' ').append(String.format("%.2f", value.doubleValue())).append('\n');
+            } else {
+                response.append(name).append(' ').append(value.longValue()).append('\n');
+            }
+        }
+    }
+    
     private void sendResponse(HttpExchange exchange, int statusCode, String response) throws IOException {
         exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
         byte[] responseBytes = response.getBytes(StandardCharsets.UTF_8);
@@ -0,0 +1,83 @@
+package imd.ufrn.br.monitoring;
+
+import imd.ufrn.br.infra.MetricsCollector;
+import imd.ufrn.br.lifecycle.Lifecycle;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingStream;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Watches the JFR {@code jdk.VirtualThreadPinned} event and reports how often, and for how long,
+ * virtual threads blocked while pinned to their carrier (typically inside a synchronized block in
+ * service code). Each distinct pinning site is logged once.
+ */
+public class PinningMonitor implements Lifecycle {
+
+    private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+
+    private final MetricsCollector metricsCollector;
+    private final Duration threshold;
+    private final Set<String> reportedSites = ConcurrentHashMap.newKeySet();
+    private RecordingStream stream;
+    private volatile boolean running = false;
+
+    public PinningMonitor(MetricsCollector metricsCollector, long thresholdMs) {
+        this.metricsCollector = metricsCollector;
+        this.threshold = Duration.ofMillis(thresholdMs);
+    }
+
+    @Override
+    public void start() throws Exception {
+        if (running) {
+            return;
+        }
+        stream = new RecordingStream();
+        stream.enable(PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        stream.onEvent(PINNED_EVENT, this::onPinned);
+        stream.startAsync();
+        running = true;
+    }
+
+    @Override
+    public void stop() throws Exception {
+        if (stream != null && running) {
+            stream.close();
+            running = false;
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void onPinned(RecordedEvent event) {
+        metricsCollector.incrementCounter("virtual_thread_pinned_total");
+        metricsCollector.addToCounter("virtual_thread_pinned_ms_total", event.getDuration().toMillis());
+
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        if (stackTrace == null) {
+            return;
+        }
+        for (RecordedFrame frame : stackTrace.getFrames()) {
+            if (!frame.isJavaFrame()) {
+                continue;
+            }
+            String typeName = frame.getMethod().getType().getName();
+            if (typeName.startsWith("java.") || typeName.startsWith("jdk.") || typeName.startsWith("sun.")) {
+                continue;
+            }
+            String site = typeName + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+            if (reportedSites.add(site)) {
+                System.err.println("PinningMonitor: Virtual thread pinned for " + event.getDuration().toMillis()
+                        + "ms at " + site);
+            }
+            return;
+        }
+    }
+}
@@ -1,6 +1,9 @@
 package imd.ufrn.br.registry;
 
 import imd.ufrn.br.annotations.HttpVerb;
+import imd.ufrn.br.remoting.MethodAccessor;
+import imd.ufrn.br.remoting.ParameterBinder;
+
 import java.lang.reflect.Method;
 
 public record RouteInfo(
@@ -8,5 +11,26 @@ public record RouteInfo(
     HttpVerb verb,
     Object instance,
     Method method,
-    Class<?>[] parameterTypes
-) {}
+    Class<?>[] parameterTypes,
+    ParameterBinder binder,
+    MethodAccessor accessor,
+    long cacheTtlMs,
+    boolean oneWay
+) {
+
+    /**
+     * Whether responses of this route are kept in the gateway's response cache; see
+     * {@link imd.ufrn.br.annotations.Cacheable}.
+     */
+    public boolean isCacheable() {
+        return cacheTtlMs >= 0;
+    }
+
+    /**
+     * Whether this route may be invoked through the UDP transport; see
+     * {@link imd.ufrn.br.annotations.OneWay}.
+     */
+    public boolean isOneWay() {
+        return oneWay;
+    }
+}
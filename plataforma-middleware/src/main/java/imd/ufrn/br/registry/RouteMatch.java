@@ -0,0 +1,13 @@
+package imd.ufrn.br.registry;
+
+/**
+ * A route resolved for a concrete request path, with the values captured by its path variables in
+ * declaration order.
+ */
+public record RouteMatch(
+    RouteInfo route,
+    String[] pathValues
+) {
+
+    static final String[] NO_VALUES = new String[0];
+}
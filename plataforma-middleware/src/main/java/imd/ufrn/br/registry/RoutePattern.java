@@ -0,0 +1,72 @@
+package imd.ufrn.br.registry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parsed form of a route path. Segments are literals, {@code {name}} or {@code *} (exactly one
+ * segment), or a trailing {@code {*name}} that captures the rest of the path.
+ */
+final class RoutePattern {
+
+    enum Kind { LITERAL, VARIABLE, CATCH_ALL }
+
+    private final String[] segments;
+    private final Kind[] kinds;
+    private final List<String> variableNames;
+
+    private RoutePattern(String[] segments, Kind[] kinds, List<String> variableNames) {
+        this.segments = segments;
+        this.kinds = kinds;
+        this.variableNames = variableNames;
+    }
+
+    static RoutePattern parse(String path) {
+        String normalized = path.startsWith("/") ? path.substring(1) : path;
+        String[] segments = normalized.split("/", -1);
+        Kind[] kinds = new Kind[segments.length];
+        List<String> variableNames = new ArrayList<>();
+
+        for (int i = 0; i < segments.length; i++) {
+            String segment = segments[i];
+            if (segment.startsWith("{*") && segment.endsWith("}")) {
+                if (i != segments.length - 1) {
+                    throw new IllegalArgumentException("Catch-all segment must be the last one in route " + path);
+                }
+                kinds[i] = Kind.CATCH_ALL;
+                segments[i] = segment.substring(2, segment.length() - 1);
+                variableNames.add(segments[i]);
+            } else if (segment.startsWith("{") && segment.endsWith("}")) {
+                kinds[i] = Kind.VARIABLE;
+                segments[i] = segment.substring(1, segment.length() - 1);
+                variableNames.add(segments[i]);
+            } else if (segment.equals("*")) {
+                kinds[i] = Kind.VARIABLE;
+                variableNames.add("*");
+            } else {
+                kinds[i] = Kind.LITERAL;
+            }
+        }
+        return new RoutePattern(segments, kinds, List.copyOf(variableNames));
+    }
+
+    int size() {
+        return segments.length;
+    }
+
+    String segment(int index) {
+        return segments[index];
+    }
+
+    Kind kind(int index) {
+        return kinds[index];
+    }
+
+    List<String> variableNames() {
+        return variableNames;
+    }
+
+    boolean hasVariables() {
+        return !variableNames.isEmpty();
+    }
+}
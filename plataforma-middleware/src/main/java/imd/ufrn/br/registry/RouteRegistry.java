@@ -1,8 +1,12 @@
 package imd.ufrn.br.registry;
 
+import imd.ufrn.br.annotations.Cacheable;
 import imd.ufrn.br.annotations.HttpVerb;
 import imd.ufrn.br.annotations.MethodMapping;
+import imd.ufrn.br.annotations.OneWay;
 import imd.ufrn.br.annotations.RequestMapping;
+import imd.ufrn.br.remoting.JsonMarshaller;
+import imd.ufrn.br.remoting.MethodAccessor;
 
 import java.lang.reflect.Method;
 import java.util.HashSet;
@@ -10,9 +14,16 @@ import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Registry of annotated service routes. Lookups go through an immutable {@link RouteTrie} snapshot
+ * that is rebuilt and republished on every registration, so request threads never contend with
+ * registering threads.
+ */
 public class RouteRegistry {
     private static RouteRegistry instance;
     private final Map<String, RouteInfo> routes = new ConcurrentHashMap<>();
+    private final JsonMarshaller marshaller = new JsonMarshaller();
+    private volatile RouteTrie trie = RouteTrie.EMPTY;
 
     private RouteRegistry() {
     }
@@ -24,7 +35,7 @@ public class RouteRegistry {
         return instance;
     }
 
-    public void register(Object serviceInstance) {
+    public synchronized void register(Object serviceInstance) {
         Class<?> serviceClass = serviceInstance.getClass();
         String basePath = "";
 
@@ -40,12 +51,26 @@ public class RouteRegistry {
                 HttpVerb verb = methodMapping.verb();
                 String routeKey = verb.name() + " " + finalPath;
 
+                long cacheTtlMs = -1;
+                Cacheable cacheable = method.getAnnotation(Cacheable.class);
+                if (cacheable != null) {
+                    if (verb == HttpVerb.GET) {
+                        cacheTtlMs = Math.max(0, cacheable.ttlMs());
+                    } else {
+                        System.err.println("Warning: @Cacheable ignored on " + routeKey + ", only GET routes are cached.");
+                    }
+                }
+
                 RouteInfo routeInfo = new RouteInfo(
                         finalPath,
                         verb,
                         serviceInstance,
                         method,
-                        method.getParameterTypes()
+                        method.getParameterTypes(),
+                        marshaller.createBinder(method, RoutePattern.parse(finalPath).variableNames()),
+                        MethodAccessor.of(method),
+                        cacheTtlMs,
+                        method.isAnnotationPresent(OneWay.class)
                 );
 
                 if (routes.containsKey(routeKey)) {
@@ -55,11 +80,21 @@ public class RouteRegistry {
                 System.out.println("Route registered: " + routeKey + " -> " + serviceClass.getName() + "." + method.getName());
             }
         }
+        trie = RouteTrie.build(routes.values());
     }
 
     public RouteInfo findRoute(HttpVerb verb, String path) {
-        String routeKey = verb.name() + " " + path;
-        return routes.get(routeKey);
+        RouteMatch match = trie.match(verb, path);
+        return match == null ? null : match.route();
+    }
+
+    /**
+     * Resolves {@code path} against the current snapshot, including path variable values.
+     *
+     * @return the match, or null when no route applies
+     */
+    public RouteMatch match(HttpVerb verb, String path) {
+        return trie.match(verb, path);
     }
 
     public Map<String, RouteInfo> getRoutes() {
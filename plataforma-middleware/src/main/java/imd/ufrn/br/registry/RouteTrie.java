@@ -0,0 +1,160 @@
+package imd.ufrn.br.registry;
+
+import imd.ufrn.br.annotations.HttpVerb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable segment trie over all registered routes, one root per HTTP verb. Matching walks the
+ * request path in place, comparing segments with regionMatches, so resolving a route without path
+ * variables allocates nothing; only captured variable values are materialized. Literal segments take
+ * precedence over variables, which take precedence over a catch-all.
+ */
+final class RouteTrie {
+
+    static final RouteTrie EMPTY = build(List.of());
+
+    private final EnumMap<HttpVerb, Node> roots;
+
+    private RouteTrie(EnumMap<HttpVerb, Node> roots) {
+        this.roots = roots;
+    }
+
+    static RouteTrie build(Collection<RouteInfo> routes) {
+        EnumMap<HttpVerb, Builder> builders = new EnumMap<>(HttpVerb.class);
+        for (RouteInfo route : routes) {
+            RoutePattern pattern = RoutePattern.parse(route.path());
+            Builder node = builders.computeIfAbsent(route.verb(), v -> new Builder());
+            for (int i = 0; i < pattern.size(); i++) {
+                node = switch (pattern.kind(i)) {
+                    case LITERAL -> node.literals.computeIfAbsent(pattern.segment(i), s -> new Builder());
+                    case VARIABLE -> node.variable != null ? node.variable : (node.variable = new Builder());
+                    case CATCH_ALL -> node.catchAll != null ? node.catchAll : (node.catchAll = new Builder());
+                };
+            }
+            if (node.route != null) {
+                System.err.println("Warning: Ambiguous route " + route.verb() + " " + route.path() +
+                        " shadows " + node.route.verb() + " " + node.route.path() + ".");
+            }
+            node.route = route;
+            node.pattern = pattern;
+        }
+
+        EnumMap<HttpVerb, Node> roots = new EnumMap<>(HttpVerb.class);
+        builders.forEach((verb, builder) -> roots.put(verb, builder.freeze()));
+        return new RouteTrie(roots);
+    }
+
+    RouteMatch match(HttpVerb verb, String path) {
+        Node root = roots.get(verb);
+        if (root == null || path.isEmpty() || path.charAt(0) != '/') {
+            return null;
+        }
+        Node leaf = find(root, path, 1);
+        if (leaf == null) {
+            return null;
+        }
+        return leaf.staticMatch != null ? leaf.staticMatch : new RouteMatch(leaf.route, capture(leaf.pattern, path));
+    }
+
+    private static Node find(Node node, String path, int start) {
+        int end = path.indexOf('/', start);
+        boolean last = end < 0;
+        if (last) {
+            end = path.length();
+        }
+        int length = end - start;
+
+        String[] keys = node.literalKeys;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i].length() == length && path.regionMatches(start, keys[i], 0, length)) {
+                Node found = last ? routeOf(node.literalChildren[i]) : find(node.literalChildren[i], path, end + 1);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        if (node.variable != null && length > 0) {
+            Node found = last ? routeOf(node.variable) : find(node.variable, path, end + 1);
+            if (found != null) {
+                return found;
+            }
+        }
+        return node.catchAll;
+    }
+
+    private static Node routeOf(Node node) {
+        return node.route != null ? node : null;
+    }
+
+    private static String[] capture(RoutePattern pattern, String path) {
+        String[] values = new String[pattern.variableNames().size()];
+        int value = 0;
+        int start = 1;
+        for (int i = 0; i < pattern.size(); i++) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = path.length();
+            }
+            switch (pattern.kind(i)) {
+                case VARIABLE -> values[value++] = path.substring(start, end);
+                case CATCH_ALL -> {
+                    values[value++] = start <= path.length() ? path.substring(start) : "";
+                    return values;
+                }
+                default -> {
+                }
+            }
+            start = end + 1;
+        }
+        return values;
+    }
+
+    private static final class Node {
+        final String[] literalKeys;
+        final Node[] literalChildren;
+        final Node variable;
+        final Node catchAll;
+        final RouteInfo route;
+        final RoutePattern pattern;
+        final RouteMatch staticMatch;
+
+        Node(String[] literalKeys, Node[] literalChildren, Node variable, Node catchAll, RouteInfo route, RoutePattern pattern) {
+            this.literalKeys = literalKeys;
+            this.literalChildren = literalChildren;
+            this.variable = variable;
+            this.catchAll = catchAll;
+            this.route = route;
+            this.pattern = pattern;
+            this.staticMatch = route != null && !pattern.hasVariables() ? new RouteMatch(route, RouteMatch.NO_VALUES) : null;
+        }
+    }
+
+    private static final class Builder {
+        final Map<String, Builder> literals = new LinkedHashMap<>();
+        Builder variable;
+        Builder catchAll;
+        RouteInfo route;
+        RoutePattern pattern;
+
+        Node freeze() {
+            List<String> keys = new ArrayList<>(literals.keySet());
+            Node[] children = new Node[keys.size()];
+            for (int i = 0; i < children.length; i++) {
+                children[i] = literals.get(keys.get(i)).freeze();
+            }
+            return new Node(
+                    keys.toArray(new String[0]),
+                    children,
+                    variable != null ? variable.freeze() : null,
+                    catchAll != null ? catchAll.freeze() : null,
+                    route,
+                    pattern);
+        }
+    }
+}
@@ -1,18 +1,105 @@
 package imd.ufrn.br.remoting;
 
+import imd.ufrn.br.annotations.Bulkhead;
+import imd.ufrn.br.infra.MetricsCollector;
+import imd.ufrn.br.infra.VirtualThreads;
+
 import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Runs invocations off the caller's thread. Services without a bulkhead share one pool; services
+ * given a bulkhead through {@link #addBulkhead} get their own bounded ThreadPoolExecutor.
+ */
 public class AsyncInvoker {
 
     private final Invoker invoker;
     private final ExecutorService executor;
+    private final MetricsCollector metricsCollector;
+    private final Map<Class<?>, ExecutorService> bulkheads = new ConcurrentHashMap<>();
 
     public AsyncInvoker(int poolSize) {
-        this.invoker = new Invoker();
-        this.executor = Executors.newFixedThreadPool(Math.max(1, poolSize));
+        this(new Invoker(), poolSize, false);
+    }
+
+    public AsyncInvoker(Invoker invoker, int poolSize, boolean virtualThreads) {
+        this(invoker, poolSize, virtualThreads, null);
+    }
+
+    /**
+     * @param virtualThreads run every invocation on its own virtual thread instead of a fixed pool;
+     *                       ignored (with a warning) when the runtime does not support them
+     */
+    public AsyncInvoker(Invoker invoker, int poolSize, boolean virtualThreads, MetricsCollector metricsCollector) {
+        this.invoker = invoker;
+        this.metricsCollector = metricsCollector;
+        ExecutorService virtualExecutor = virtualThreads ? VirtualThreads.newPerTaskExecutor("AsyncInvoker-") : null;
+        if (virtualThreads && virtualExecutor == null) {
+            System.err.println("AsyncInvoker: Virtual threads not available, using a pool of " + poolSize + " platform threads");
+        }
+        this.executor = virtualExecutor != null ? virtualExecutor : Executors.newFixedThreadPool(Math.max(1, poolSize));
+    }
+
+    /**
+     * Gives every invocation on instances of {@code serviceClass} its own pool of {@code threads}
+     * platform threads with a queue of {@code queueCapacity} calls (0 for direct hand-off). Calls
+     * arriving when both are full are handled according to {@code rejection}. Queue depth, busy
+     * threads and rejections are published as {@code bulkhead_*{service="name"}} metrics.
+     */
+    public void addBulkhead(Class<?> serviceClass, String name, int threads, int queueCapacity, Bulkhead.Rejection rejection) {
+        if (threads < 1 || queueCapacity < 0) {
+            throw new IllegalArgumentException("Bulkhead '" + name + "' needs at least one thread and a non-negative queue.");
+        }
+        BlockingQueue<Runnable> queue = queueCapacity == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(queueCapacity);
+        String label = "{service=\"" + name + "\"}";
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, queue,
+                namedThreads("AsyncInvoker-" + name + "-"), (task, rejectingPool) -> {
+                    if (metricsCollector != null) {
+                        metricsCollector.incrementCounter("bulkhead_rejected_total" + label);
+                    }
+                    if (rejection == Bulkhead.Rejection.CALLER_RUNS && !rejectingPool.isShutdown()) {
+                        task.run();
+                        return;
+                    }
+                    throw new RejectedExecutionException("Bulkhead '" + name + "' is full (" + threads +
+                            " threads, " + queueCapacity + " queued)");
+                });
+        ExecutorService previous = bulkheads.put(serviceClass, pool);
+        if (previous != null) {
+            previous.shutdown();
+        }
+        if (metricsCollector != null) {
+            metricsCollector.registerGauge("bulkhead_queue_depth" + label, () -> queue.size());
+            metricsCollector.registerGauge("bulkhead_active_threads" + label, pool::getActiveCount);
+        }
+    }
+
+    public CompletableFuture<Object> invokeAsync(Request request) {
+        ExecutorService target = bulkheads.isEmpty() ? executor
+                : bulkheads.getOrDefault(request.instance().getClass(), executor);
+        try {
+            return CompletableFuture.supplyAsync(() -> {
+                try {
+                    return invoker.invoke(request);
+                } catch (Throwable t) {
+                    throw new RuntimeException(t);
+                }
+            }, target);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
     }
 
     public CompletableFuture<Object> invokeAsync(Object targetObject, Method method, Object[] args) {
@@ -27,5 +114,11 @@ public class AsyncInvoker {
 
     public void shutdown() {
         executor.shutdown();
+        bulkheads.values().forEach(ExecutorService::shutdown);
+    }
+
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return task -> new Thread(task, prefix + counter.incrementAndGet());
     }
 }
@@ -0,0 +1,54 @@
+package imd.ufrn.br.remoting;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.util.JsonRecyclerPools;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Binary Jackson formats for service-to-service traffic. They carry the same data model as JSON,
+ * so any route accepts them, but numbers are written in binary and strings are length-prefixed,
+ * which makes bodies smaller and cheaper to parse than the equivalent JSON.
+ */
+public final class BinaryMarshaller implements Marshaller {
+
+    public static final String CBOR_MEDIA_TYPE = "application/cbor";
+    public static final String SMILE_MEDIA_TYPE = "application/x-jackson-smile";
+
+    private final String mediaType;
+    private final JsonFactory factory;
+
+    public BinaryMarshaller(String mediaType, JsonFactory factory) {
+        this.mediaType = mediaType;
+        this.factory = factory;
+    }
+
+    /**
+     * CBOR (RFC 8949).
+     */
+    public static BinaryMarshaller cbor() {
+        return new BinaryMarshaller(CBOR_MEDIA_TYPE, CBORFactory.builder()
+                .recyclerPool(JsonRecyclerPools.sharedLockFreePool())
+                .build());
+    }
+
+    /**
+     * Jackson's Smile, which also back-references repeated property names, so it is the smallest of
+     * the three for lists of objects.
+     */
+    public static BinaryMarshaller smile() {
+        return new BinaryMarshaller(SMILE_MEDIA_TYPE, SmileFactory.builder()
+                .recyclerPool(JsonRecyclerPools.sharedLockFreePool())
+                .build());
+    }
+
+    @Override
+    public String mediaType() {
+        return mediaType;
+    }
+
+    @Override
+    public JsonFactory factory() {
+        return factory;
+    }
+}
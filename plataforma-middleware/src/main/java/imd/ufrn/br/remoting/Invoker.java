@@ -5,8 +5,16 @@ import imd.ufrn.br.exceptions.InvocationException;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 
+/**
+ * Reflective invocation strategy, the platform's default baseline. See {@link MethodHandleInvoker}
+ * for the strategy that uses the per-route accessors compiled at registration.
+ */
 public class Invoker {
 
+    public Object invoke(Request request) throws Throwable {
+        return invoke(request.instance(), request.method(), request.params());
+    }
+
     public Object invoke(Object targetObject, Method method, Object[] args) throws Throwable {
         if (targetObject == null || method == null) {
             throw new IllegalArgumentException("Target object and method cannot be null for invocation.");
@@ -1,26 +1,61 @@
 package imd.ufrn.br.remoting;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.util.JsonRecyclerPools;
 import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.type.TypeFactory;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import imd.ufrn.br.annotations.PathVariable;
 import imd.ufrn.br.exceptions.MarshallingException;
 
 import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.Type;
 import java.util.List;
+import java.util.concurrent.CompletionStage;
 
-public class JsonMarshaller {
+/**
+ * The default {@link Marshaller}, and the one route binders are compiled with.
+ */
+public class JsonMarshaller implements Marshaller {
+
+    public static final String MEDIA_TYPE = "application/json";
 
     private final ObjectMapper objectMapper;
 
     public JsonMarshaller() {
-        this.objectMapper = new ObjectMapper();
+        // A shared recycler pool keeps Jackson's parse/generate buffers reusable on virtual threads too
+        this.objectMapper = new ObjectMapper(JsonFactory.builder()
+                .recyclerPool(JsonRecyclerPools.sharedLockFreePool())
+                .build());
         this.objectMapper.registerModule(new JavaTimeModule());
         this.objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
     }
 
+    @Override
+    public String mediaType() {
+        return MEDIA_TYPE;
+    }
+
+    @Override
+    public String contentType() {
+        return MEDIA_TYPE + "; charset=UTF-8";
+    }
+
+    @Override
+    public JsonFactory factory() {
+        return objectMapper.getFactory();
+    }
+
     public String serialize(Object data) throws MarshallingException {
         if (data == null) {
             return "null";
@@ -47,6 +82,24 @@ public class JsonMarshaller {
         }
     }
 
+    /**
+     * Reads {@code data} as {@code type}, including generic types such as {@code List<ComplexData>}.
+     *
+     * @return null for an empty body
+     */
+    public Object unmarshal(byte[] data, Type type) throws MarshallingException {
+        if (data == null || data.length == 0) {
+            return null;
+        }
+        JavaType targetType = objectMapper.getTypeFactory().constructType(type);
+        try {
+            return objectMapper.readValue(data, targetType);
+        } catch (IOException e) {
+            throw new MarshallingException("Error unmarshalling JSON to object of type " +
+                    targetType.toCanonical() + ": " + e.getMessage(), e);
+        }
+    }
+
     public Object[] unmarshalParameters(String jsonParamsArray, Class<?>[] paramTypes) throws MarshallingException {
         if (paramTypes == null) {
             throw new MarshallingException("Parameter types array cannot be null for unmarshalling parameters.", null);
@@ -96,4 +149,120 @@ public class JsonMarshaller {
                     ". " + e.getMessage(), e);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Deep-copies {@code value} as {@code type} by writing it into a token buffer and reading it back,
+     * so the copy shares no mutable state with the original but skips encoding any text.
+     */
+    public Object copy(Object value, Type type) throws MarshallingException {
+        if (value == null) {
+            return null;
+        }
+        try (TokenBuffer buffer = new TokenBuffer(objectMapper, false)) {
+            objectMapper.writeValue(buffer, value);
+            try (JsonParser parser = buffer.asParser(objectMapper)) {
+                return objectMapper.readValue(parser, objectMapper.getTypeFactory().constructType(type));
+            }
+        } catch (IOException e) {
+            throw new MarshallingException("Error copying " + value.getClass().getName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Resolves readers for the full generic parameter types of {@code method} (so a
+     * {@code List<String>} parameter binds as strings) and a writer for its return type. Parameters
+     * annotated with {@link PathVariable} are bound from the route's {@code pathVariables} by name.
+     * A parameter declared as one of the {@link StreamingParameter} types must be the last parameter
+     * bound from the body.
+     */
+    public ParameterBinder createBinder(Method method, List<String> pathVariables) {
+        TypeFactory typeFactory = objectMapper.getTypeFactory();
+        Type[] genericTypes = method.getGenericParameterTypes();
+        Annotation[][] annotations = method.getParameterAnnotations();
+        ObjectReader[] readers = new ObjectReader[genericTypes.length];
+        int[] pathIndexes = new int[genericTypes.length];
+        for (int i = 0; i < genericTypes.length; i++) {
+            readers[i] = objectMapper.readerFor(typeFactory.constructType(genericTypes[i]));
+            pathIndexes[i] = -1;
+            for (Annotation annotation : annotations[i]) {
+                if (annotation instanceof PathVariable pathVariable) {
+                    pathIndexes[i] = pathVariables.indexOf(pathVariable.value());
+                    if (pathIndexes[i] < 0) {
+                        throw new IllegalArgumentException("Method " + method.getName() + " binds path variable '" +
+                                pathVariable.value() + "', which its route does not declare.");
+                    }
+                }
+            }
+        }
+        int streamingIndex = streamingIndexOf(method, pathIndexes);
+        StreamingParameter streamingParameter = null;
+        if (streamingIndex >= 0) {
+            Class<?> rawType = method.getParameterTypes()[streamingIndex];
+            ObjectReader elementReader = null;
+            if (!StreamingParameter.isPrimitive(rawType)) {
+                JavaType[] elementType = typeFactory.constructType(genericTypes[streamingIndex]).findTypeParameters(rawType);
+                elementReader = objectMapper.readerFor(elementType.length == 1 ? elementType[0] : typeFactory.constructType(Object.class));
+            }
+            streamingParameter = StreamingParameter.of(rawType, elementReader);
+        }
+        JavaType resultType = resultTypeOf(method);
+        return new ParameterBinder(objectMapper.getFactory(), genericTypes, readers, pathIndexes, writerFor(resultType),
+                streamWriterFor(resultType), streamingIndex, streamingParameter);
+    }
+
+    public ParameterBinder createBinder(Method method) {
+        return createBinder(method, List.of());
+    }
+
+    private static int streamingIndexOf(Method method, int[] pathIndexes) {
+        Class<?>[] types = method.getParameterTypes();
+        int streamingIndex = -1;
+        for (int i = 0; i < types.length; i++) {
+            if (streamingIndex >= 0 && pathIndexes[i] < 0) {
+                throw new IllegalArgumentException("Method " + method.getName() + " has a body parameter after its streamed parameter "
+                        + types[streamingIndex].getSimpleName() + "; the streamed parameter must be the last one in the body.");
+            }
+            if (StreamingParameter.isStreaming(types[i])) {
+                if (pathIndexes[i] >= 0) {
+                    throw new IllegalArgumentException("Method " + method.getName() + " binds a path variable to a "
+                            + types[i].getSimpleName() + " parameter, which can only be bound from the body.");
+                }
+                streamingIndex = i;
+            }
+        }
+        return streamingIndex;
+    }
+
+    private JavaType resultTypeOf(Method method) {
+        JavaType resultType = objectMapper.getTypeFactory().constructType(method.getGenericReturnType());
+        if (resultType.isTypeOrSubTypeOf(CompletionStage.class)) {
+            // Asynchronous methods are written once their stage completes, with its value type
+            JavaType[] valueType = resultType.findTypeParameters(CompletionStage.class);
+            resultType = valueType.length == 1 ? valueType[0] : objectMapper.getTypeFactory().constructType(Object.class);
+        }
+        return resultType;
+    }
+
+    private ResultStreamWriter streamWriterFor(JavaType resultType) {
+        Class<?> streamInterface = ResultStreamWriter.streamInterfaceOf(resultType.getRawClass());
+        if (streamInterface == null) {
+            return null;
+        }
+        JavaType[] elementType = resultType.findTypeParameters(streamInterface);
+        ObjectWriter elementWriter = writerFor(elementType.length == 1 ? elementType[0]
+                : objectMapper.getTypeFactory().constructType(Object.class));
+        // Flushing is paced by the stream writer rather than after every element
+        return new ResultStreamWriter(elementWriter.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE));
+    }
+
+    private ObjectWriter writerFor(JavaType resultType) {
+        Class<?> rawType = resultType.getRawClass();
+        // A typed writer pre-resolves its serializer, but would drop subclass properties of a
+        // non-final declared type, so those keep resolving from the runtime value.
+        boolean fixedType = rawType.isPrimitive() || rawType.isArray() || Modifier.isFinal(rawType.getModifiers());
+        if (fixedType && rawType != void.class && rawType != Void.class) {
+            return objectMapper.writerFor(resultType);
+        }
+        return objectMapper.writer();
+    }
+}
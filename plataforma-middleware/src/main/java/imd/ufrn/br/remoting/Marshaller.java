@@ -0,0 +1,33 @@
+package imd.ufrn.br.remoting;
+
+import com.fasterxml.jackson.core.JsonFactory;
+
+/**
+ * A wire format for route parameters and results. The gateway picks one per request: the body is
+ * read with the marshaller registered for its Content-Type and the result is written with the one
+ * its Accept header asks for. Route binders are compiled once against Jackson's data model, so a
+ * format only supplies the streaming factory that reads and writes its tokens; any Jackson format
+ * module (CBOR, Smile, MessagePack, ...) can be plugged in this way.
+ *
+ * @see MarshallerRegistry
+ */
+public interface Marshaller {
+
+    /**
+     * Media type matched against Content-Type and Accept, without parameters, such as
+     * {@code application/cbor}.
+     */
+    String mediaType();
+
+    /**
+     * Content-Type of bodies written in this format.
+     */
+    default String contentType() {
+        return mediaType();
+    }
+
+    /**
+     * Creates the parsers and generators of this format.
+     */
+    JsonFactory factory();
+}
@@ -0,0 +1,135 @@
+package imd.ufrn.br.remoting;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The marshallers a gateway speaks, keyed by media type. Request bodies whose Content-Type is not
+ * registered, or that have none, are read with the default marshaller, so plain clients keep working
+ * whatever they send as Content-Type. Results are written in the registered format the Accept header
+ * ranks highest; without one, they are written in the same format as the request.
+ */
+public class MarshallerRegistry {
+
+    private static final String NDJSON_MEDIA_TYPE = "application/x-ndjson";
+
+    private final Marshaller defaultMarshaller;
+    private final Map<String, Marshaller> marshallers = new ConcurrentHashMap<>();
+
+    public MarshallerRegistry(Marshaller defaultMarshaller) {
+        this.defaultMarshaller = defaultMarshaller;
+        register(defaultMarshaller);
+    }
+
+    /**
+     * Creates a marshaller from its configured name: {@code json}, {@code cbor}, {@code smile}, or the
+     * class name of a {@link Marshaller} with a no-argument constructor.
+     *
+     * @return null when the Jackson module of {@code cbor} or {@code smile} is not on the classpath, so
+     *         the gateway starts without that format instead of failing
+     */
+    public static Marshaller create(String name) {
+        switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case "json":
+                return new JsonMarshaller();
+            case "cbor":
+                try {
+                    return BinaryMarshaller.cbor();
+                } catch (NoClassDefFoundError e) {
+                    System.err.println("Warning: CBOR disabled, jackson-dataformat-cbor is not on the classpath.");
+                    return null;
+                }
+            case "smile":
+                try {
+                    return BinaryMarshaller.smile();
+                } catch (NoClassDefFoundError e) {
+                    System.err.println("Warning: Smile disabled, jackson-dataformat-smile is not on the classpath.");
+                    return null;
+                }
+            default:
+                try {
+                    return Class.forName(name.trim()).asSubclass(Marshaller.class).getDeclaredConstructor().newInstance();
+                } catch (ReflectiveOperationException | ClassCastException e) {
+                    throw new IllegalArgumentException("Unknown marshaller '" + name + "': " + e.getMessage(), e);
+                }
+        }
+    }
+
+    public void register(Marshaller marshaller) {
+        marshallers.put(marshaller.mediaType().toLowerCase(Locale.ROOT), marshaller);
+    }
+
+    public Marshaller defaultMarshaller() {
+        return defaultMarshaller;
+    }
+
+    public boolean isDefault(Marshaller marshaller) {
+        return marshaller == defaultMarshaller;
+    }
+
+    /**
+     * @return the marshaller that reads a body of {@code contentType}, the default one when that
+     *         type is not registered
+     */
+    public Marshaller forContentType(String contentType) {
+        if (contentType == null) {
+            return defaultMarshaller;
+        }
+        Marshaller marshaller = marshallers.get(mediaTypeOf(contentType));
+        return marshaller != null ? marshaller : defaultMarshaller;
+    }
+
+    /**
+     * @param fallback written when Accept is missing, accepts anything, or names no registered type
+     * @return the registered marshaller with the highest quality in {@code accept}; NDJSON counts as
+     *         the default marshaller, which writes it
+     */
+    public Marshaller forAccept(String accept, Marshaller fallback) {
+        if (accept == null || accept.isEmpty()) {
+            return fallback;
+        }
+        Marshaller best = null;
+        double bestQuality = 0;
+        for (String range : accept.split(",")) {
+            String[] params = range.split(";");
+            double quality = qualityOf(params);
+            if (quality <= bestQuality) {
+                continue;
+            }
+            String mediaType = params[0].trim().toLowerCase(Locale.ROOT);
+            Marshaller marshaller;
+            if (mediaType.endsWith("/*")) {
+                marshaller = fallback;
+            } else if (mediaType.equals(NDJSON_MEDIA_TYPE)) {
+                marshaller = defaultMarshaller;
+            } else {
+                marshaller = marshallers.get(mediaType);
+            }
+            if (marshaller != null) {
+                best = marshaller;
+                bestQuality = quality;
+            }
+        }
+        return best != null ? best : fallback;
+    }
+
+    private static String mediaTypeOf(String contentType) {
+        int semicolon = contentType.indexOf(';');
+        return (semicolon >= 0 ? contentType.substring(0, semicolon) : contentType).trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static double qualityOf(String[] params) {
+        for (int i = 1; i < params.length; i++) {
+            String param = params[i].trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2));
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
@@ -0,0 +1,124 @@
+package imd.ufrn.br.remoting;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Invocation adapter for one service method, built once at route registration. For non-void instance
+ * methods with up to five parameters LambdaMetafactory spins a class implementing one of the
+ * fixed-arity {@code ArityN} interfaces that calls the method directly, so the JIT sees an ordinary
+ * interface call. Other methods use a method handle adapted to {@code (Object, Object[]) -> Object},
+ * which also turns a void method's missing result into null. Either way
+ * the call skips the access checks and InvocationTargetException wrapping of {@link Method#invoke};
+ * exceptions thrown by the service method propagate unchanged.
+ */
+public final class MethodAccessor {
+
+    private static final MethodType GENERIC_TYPE = MethodType.methodType(Object.class, Object.class, Object[].class);
+    private static final Object[] NO_ARGS = new Object[0];
+
+    @FunctionalInterface
+    public interface Arity0 { Object invoke(Object target); }
+    @FunctionalInterface
+    public interface Arity1 { Object invoke(Object target, Object a0); }
+    @FunctionalInterface
+    public interface Arity2 { Object invoke(Object target, Object a0, Object a1); }
+    @FunctionalInterface
+    public interface Arity3 { Object invoke(Object target, Object a0, Object a1, Object a2); }
+    @FunctionalInterface
+    public interface Arity4 { Object invoke(Object target, Object a0, Object a1, Object a2, Object a3); }
+    @FunctionalInterface
+    public interface Arity5 { Object invoke(Object target, Object a0, Object a1, Object a2, Object a3, Object a4); }
+
+    private static final Class<?>[] ARITY_INTERFACES = {
+        Arity0.class, Arity1.class, Arity2.class, Arity3.class, Arity4.class, Arity5.class
+    };
+
+    private final int arity;
+    private final Object function;
+    private final MethodHandle spreadHandle;
+
+    private MethodAccessor(int arity, Object function, MethodHandle spreadHandle) {
+        this.arity = arity;
+        this.function = function;
+        this.spreadHandle = spreadHandle;
+    }
+
+    /**
+     * @return the accessor, or null when the method cannot be unreflected (callers then stay on
+     *         reflection)
+     */
+    public static MethodAccessor of(Method method) {
+        try {
+            // Lets services declared in non-public classes be unreflected as well
+            method.trySetAccessible();
+            MethodHandle handle = MethodHandles.lookup().unreflect(method);
+
+            int arity = method.getParameterCount();
+            if (!Modifier.isStatic(method.getModifiers()) && method.getReturnType() != void.class
+                    && arity < ARITY_INTERFACES.length) {
+                Object function = spinFunction(method, handle, arity);
+                if (function != null) {
+                    return new MethodAccessor(arity, function, null);
+                }
+            }
+
+            if (Modifier.isStatic(method.getModifiers())) {
+                handle = MethodHandles.dropArguments(handle, 0, Object.class);
+            }
+            handle = handle.asSpreader(Object[].class, arity);
+            return new MethodAccessor(-1, null, handle.asType(GENERIC_TYPE));
+        } catch (IllegalAccessException | RuntimeException e) {
+            System.err.println("MethodAccessor: Falling back to reflection for " + method.getName() + " - " + e.getMessage());
+            return null;
+        }
+    }
+
+    public Object invoke(Object target, Object[] args) throws Throwable {
+        Object[] a = args == null ? NO_ARGS : args;
+        if (spreadHandle != null) {
+            return (Object) spreadHandle.invokeExact(target, a);
+        }
+        if (a.length != arity) {
+            throw new IllegalArgumentException("Wrong number of arguments: expected " + arity + ", got " + a.length);
+        }
+        return switch (arity) {
+            case 0 -> ((Arity0) function).invoke(target);
+            case 1 -> ((Arity1) function).invoke(target, a[0]);
+            case 2 -> ((Arity2) function).invoke(target, a[0], a[1]);
+            case 3 -> ((Arity3) function).invoke(target, a[0], a[1], a[2]);
+            case 4 -> ((Arity4) function).invoke(target, a[0], a[1], a[2], a[3]);
+            default -> ((Arity5) function).invoke(target, a[0], a[1], a[2], a[3], a[4]);
+        };
+    }
+
+    /**
+     * Generates the ArityN implementation. Needs a full-privilege lookup in the service class; when
+     * the runtime refuses one (e.g. across module boundaries) the method-handle path is used instead.
+     * The method must return a value: LambdaMetafactory cannot implement an {@code Object} result
+     * with a void method, and only takes the method's own, unadapted handle.
+     */
+    private static Object spinFunction(Method method, MethodHandle handle, int arity) {
+        try {
+            Class<?> arityInterface = ARITY_INTERFACES[arity];
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(method.getDeclaringClass(), MethodHandles.lookup());
+            MethodType samType = MethodType.genericMethodType(arity + 1);
+            MethodType instantiatedType = handle.type().wrap();
+            CallSite site = LambdaMetafactory.metafactory(
+                    lookup,
+                    "invoke",
+                    MethodType.methodType(arityInterface),
+                    samType,
+                    handle,
+                    instantiatedType);
+            return site.getTarget().invoke();
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package imd.ufrn.br.remoting;
+
+/**
+ * Invocation strategy that calls through the {@link MethodAccessor} compiled for the route at
+ * registration time. Requests without an accessor fall back to reflection.
+ */
+public class MethodHandleInvoker extends Invoker {
+
+    @Override
+    public Object invoke(Request request) throws Throwable {
+        MethodAccessor accessor = request.accessor();
+        if (accessor == null) {
+            return super.invoke(request);
+        }
+        if (request.instance() == null) {
+            throw new IllegalArgumentException("Target object and method cannot be null for invocation.");
+        }
+        return accessor.invoke(request.instance(), request.params());
+    }
+}
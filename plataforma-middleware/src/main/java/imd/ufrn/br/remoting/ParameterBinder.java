@@ -0,0 +1,223 @@
+package imd.ufrn.br.remoting;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.node.TextNode;
+import imd.ufrn.br.exceptions.MarshallingException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+
+/**
+ * Precompiled JSON binding for one route. Created once at registration with an ObjectReader per
+ * parameter, resolved from the method's full generic signature, and an ObjectWriter for its result,
+ * so a request is bound in a single pass over the token stream with no per-call type resolution.
+ * Parameters bound to path variables are converted from the captured segment; the JSON body array
+ * then only carries the remaining parameters, in order. Results of streaming routes are written
+ * element by element through a {@link ResultStreamWriter}. A {@link StreamingParameter} last in the
+ * body is bound to a lazy view over the rest of the request body rather than read up front.
+ * <p>
+ * The readers and writers only depend on Jackson's data model, so the same binder reads and writes
+ * any {@link Marshaller}'s format by swapping the factory its parsers and generators come from.
+ */
+public final class ParameterBinder {
+
+    private static final String[] NO_PATH_VALUES = new String[0];
+
+    private final JsonFactory jsonFactory;
+    private final Type[] parameterTypes;
+    private final ObjectReader[] readers;
+    private final int[] pathIndexes;
+    private final int bodyParameterCount;
+    private final ObjectWriter resultWriter;
+    private final ResultStreamWriter streamWriter;
+    private final int streamingIndex;
+    private final StreamingParameter streamingParameter;
+
+    /**
+     * @param streamingIndex index of the parameter bound through {@code streamingParameter}, or -1
+     */
+    ParameterBinder(JsonFactory jsonFactory, Type[] parameterTypes, ObjectReader[] readers, int[] pathIndexes,
+                    ObjectWriter resultWriter, ResultStreamWriter streamWriter, int streamingIndex,
+                    StreamingParameter streamingParameter) {
+        this.jsonFactory = jsonFactory;
+        this.parameterTypes = parameterTypes;
+        this.readers = readers;
+        this.pathIndexes = pathIndexes;
+        this.resultWriter = resultWriter;
+        this.streamWriter = streamWriter;
+        this.streamingIndex = streamingIndex;
+        this.streamingParameter = streamingParameter;
+        int bodyParameters = 0;
+        for (int pathIndex : pathIndexes) {
+            if (pathIndex < 0) {
+                bodyParameters++;
+            }
+        }
+        this.bodyParameterCount = bodyParameters;
+    }
+
+    public Type[] getParameterTypes() {
+        return parameterTypes.clone();
+    }
+
+    public Object[] readParameters(InputStream in) throws MarshallingException {
+        return readParameters(in, NO_PATH_VALUES);
+    }
+
+    /**
+     * Binds the parameters of one call. When the route has a streaming parameter, {@code in} is
+     * still being read after this returns, as the method consumes that parameter, and must stay open
+     * until the invocation has finished.
+     */
+    public Object[] readParameters(InputStream in, String[] pathValues) throws MarshallingException {
+        return readParameters(in, pathValues, jsonFactory);
+    }
+
+    /**
+     * Binds the parameters of one call from a body in {@code marshaller}'s format.
+     */
+    public Object[] readParameters(InputStream in, String[] pathValues, Marshaller marshaller) throws MarshallingException {
+        return readParameters(in, pathValues, marshaller.factory());
+    }
+
+    private Object[] readParameters(InputStream in, String[] pathValues, JsonFactory factory) throws MarshallingException {
+        Object[] params = new Object[readers.length];
+        if (bodyParameterCount < readers.length) {
+            bindPathValues(params, pathValues);
+        }
+
+        JsonParser parser = null;
+        boolean handedOff = false;
+        try {
+            parser = factory.createParser(in);
+            JsonToken token = parser.nextToken();
+            if (token == null) {
+                if (bodyParameterCount == 0) {
+                    return params;
+                }
+                throw new MarshallingException("Received empty parameters JSON, but expected " + bodyParameterCount + " parameters.", null);
+            }
+            if (token != JsonToken.START_ARRAY) {
+                throw new MarshallingException("Expected a JSON array of parameters but found " + token + ".", null);
+            }
+
+            int index = 0;
+            int received = 0;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token == null) {
+                    throw new MarshallingException("Unexpected end of parameters JSON after " + received + " parameters.", null);
+                }
+                while (index < readers.length && pathIndexes[index] >= 0) {
+                    index++;
+                }
+                if (index >= readers.length) {
+                    throw new MarshallingException("Parameter count mismatch. Expected " + bodyParameterCount +
+                            " parameters, but received more.", null);
+                }
+                if (index == streamingIndex && token != JsonToken.VALUE_NULL) {
+                    if (token != JsonToken.START_ARRAY) {
+                        throw new MarshallingException("Expected a JSON array for streamed parameter at index " + index +
+                                " but found " + token + ".", null);
+                    }
+                    // Always the last body parameter; its view checks that the array ends after it
+                    params[index] = streamingParameter.open(parser);
+                    handedOff = true;
+                    return params;
+                }
+                if (token != JsonToken.VALUE_NULL) {
+                    try {
+                        params[index] = readers[index].readValue(parser);
+                    } catch (IOException e) {
+                        throw new MarshallingException("Error converting parameter at index " + index +
+                                " to target type '" + parameterTypes[index].getTypeName() + "'. " + e.getMessage(), e);
+                    }
+                }
+                index++;
+                received++;
+            }
+            if (received != bodyParameterCount) {
+                throw new MarshallingException("Parameter count mismatch. Expected " + bodyParameterCount +
+                        " parameters, but received " + received + ".", null);
+            }
+            return params;
+        } catch (IOException e) {
+            throw new MarshallingException("Error unmarshalling parameters array from JSON. " + e.getMessage(), e);
+        } finally {
+            if (parser != null && !handedOff) {
+                try {
+                    parser.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private void bindPathValues(Object[] params, String[] pathValues) {
+        for (int i = 0; i < readers.length; i++) {
+            if (pathIndexes[i] < 0) {
+                continue;
+            }
+            String value = pathValues[pathIndexes[i]];
+            try {
+                params[i] = readers[i].readValue(TextNode.valueOf(value));
+            } catch (IOException | IllegalArgumentException e) {
+                throw new MarshallingException("Error converting path value '" + value + "' to target type '" +
+                        parameterTypes[i].getTypeName() + "'. " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Whether the route returns a Stream, Iterator or Flow.Publisher, whose elements are written as
+     * they are produced rather than as one value.
+     */
+    public boolean isStreaming() {
+        return streamWriter != null;
+    }
+
+    /**
+     * Whether methods declared to return {@code resultType} get a streaming binder.
+     */
+    public static boolean isStreamingType(Class<?> resultType) {
+        return ResultStreamWriter.streamInterfaceOf(resultType) != null;
+    }
+
+    public void writeResult(OutputStream out, Object result) throws MarshallingException {
+        writeResult(out, result, false);
+    }
+
+    /**
+     * @param ndjson for streaming routes, write each element as a line of JSON instead of writing a
+     *               JSON array; ignored for other routes
+     */
+    public void writeResult(OutputStream out, Object result, boolean ndjson) throws MarshallingException {
+        writeResult(out, result, ndjson, jsonFactory);
+    }
+
+    /**
+     * Writes the result in {@code marshaller}'s format; {@code ndjson} only applies to JSON.
+     */
+    public void writeResult(OutputStream out, Object result, boolean ndjson, Marshaller marshaller) throws MarshallingException {
+        writeResult(out, result, ndjson, marshaller.factory());
+    }
+
+    private void writeResult(OutputStream out, Object result, boolean ndjson, JsonFactory factory) throws MarshallingException {
+        try (JsonGenerator generator = factory.createGenerator(out)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            if (streamWriter != null) {
+                streamWriter.write(generator, result, ndjson);
+            } else {
+                resultWriter.writeValue(generator, result);
+            }
+        } catch (IOException e) {
+            throw new MarshallingException("Error marshalling object to JSON: " + e.getMessage(), e);
+        }
+    }
+}
@@ -5,5 +5,11 @@ import java.lang.reflect.Method;
 public record Request(
     Object instance,
     Method method,
-    Object[] params
-) {}
+    Object[] params,
+    MethodAccessor accessor
+) {
+
+    public Request(Object instance, Method method, Object[] params) {
+        this(instance, method, params, null);
+    }
+}
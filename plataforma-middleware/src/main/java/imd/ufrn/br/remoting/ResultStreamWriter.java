@@ -0,0 +1,263 @@
+package imd.ufrn.br.remoting;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Writes route results that are produced as a sequence, a {@link Stream}, {@link Iterator} or
+ * {@link Flow.Publisher}, one element at a time as a JSON array or as newline-delimited JSON. The
+ * next element is only pulled once the previous one has been handed to the output, so a slow client
+ * slows the source down instead of letting the result pile up in memory; a publisher is never asked
+ * for more than {@link #PUBLISHER_PREFETCH} elements ahead. Output is flushed after the first
+ * element, whenever {@link #FLUSH_INTERVAL_NANOS} has passed since the last flush and before waiting
+ * on a publisher. The source is closed, or its subscription cancelled, however writing ends.
+ * <p>
+ * While waiting on a publisher the output is flushed again every {@link #PUBLISHER_CHECK_MILLIS}, so a
+ * client that has gone away fails the write, and a publisher that signals nothing for
+ * {@link #PUBLISHER_TIMEOUT_MILLIS} fails the response.
+ */
+final class ResultStreamWriter {
+
+    private static final long FLUSH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final int PUBLISHER_PREFETCH = 32;
+    private static final long PUBLISHER_CHECK_MILLIS = 1000;
+    private static final long PUBLISHER_TIMEOUT_MILLIS = 60000;
+
+    private final ObjectWriter elementWriter;
+
+    ResultStreamWriter(ObjectWriter elementWriter) {
+        this.elementWriter = elementWriter;
+    }
+
+    /**
+     * The sequence interface a declared result type streams through, or null when results of that
+     * type are written as a single value.
+     */
+    static Class<?> streamInterfaceOf(Class<?> resultType) {
+        for (Class<?> candidate : new Class<?>[] {Stream.class, Iterator.class, Flow.Publisher.class}) {
+            if (candidate.isAssignableFrom(resultType)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    void write(JsonGenerator generator, Object result, boolean ndjson) throws IOException {
+        if (result == null) {
+            if (!ndjson) {
+                generator.writeNull();
+            }
+            return;
+        }
+        if (ndjson) {
+            // Binary generators have no root separator to clear, and are never asked for NDJSON
+            generator.setRootValueSeparator(null);
+        }
+        // A source that fails midway must leave the array unterminated, not look complete
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+        try (Source source = Source.of(result, generator)) {
+            if (!ndjson) {
+                generator.writeStartArray();
+            }
+            boolean first = true;
+            long lastFlush = System.nanoTime();
+            while (source.hasNext()) {
+                elementWriter.writeValue(generator, source.next());
+                if (ndjson) {
+                    generator.writeRaw('\n');
+                }
+                long now = System.nanoTime();
+                if (first || now - lastFlush >= FLUSH_INTERVAL_NANOS) {
+                    generator.flush();
+                    lastFlush = now;
+                    first = false;
+                }
+            }
+            if (!ndjson) {
+                generator.writeEndArray();
+            }
+        }
+    }
+
+    private interface Source extends Iterator<Object>, AutoCloseable {
+
+        @Override
+        void close();
+
+        static Source of(Object result, Flushable beforeWait) {
+            if (result instanceof Stream<?> stream) {
+                return iterating(stream.iterator(), stream::close);
+            }
+            if (result instanceof Iterator<?> iterator) {
+                return iterating(iterator, () -> {
+                    if (iterator instanceof AutoCloseable closeable) {
+                        try {
+                            closeable.close();
+                        } catch (Exception ignored) {
+                        }
+                    }
+                });
+            }
+            if (result instanceof Flow.Publisher<?> publisher) {
+                PublisherSource source = new PublisherSource(beforeWait);
+                publisher.subscribe(source);
+                return source;
+            }
+            throw new IllegalArgumentException("Cannot stream a result of type " + result.getClass().getName());
+        }
+
+        private static Source iterating(Iterator<?> iterator, Runnable onClose) {
+            return new Source() {
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public Object next() {
+                    return iterator.next();
+                }
+
+                @Override
+                public void close() {
+                    onClose.run();
+                }
+            };
+        }
+    }
+
+    /**
+     * Pulls a publisher's elements on the writing thread. Demand is requested in halves of the
+     * prefetch as elements are consumed, so the buffer never holds more than the prefetch.
+     */
+    private static final class PublisherSource implements Source, Flow.Subscriber<Object> {
+
+        private static final Object COMPLETE = new Object();
+
+        private final BlockingQueue<Object> signals = new ArrayBlockingQueue<>(PUBLISHER_PREFETCH + 1);
+        private final Flushable beforeWait;
+        private Flow.Subscription subscription;
+        private boolean cancelled;
+        private Object next;
+        private boolean done;
+        private int consumed;
+
+        PublisherSource(Flushable beforeWait) {
+            this.beforeWait = beforeWait;
+        }
+
+        private record Failure(Throwable error) {}
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            boolean cancelNow;
+            synchronized (this) {
+                cancelNow = cancelled || this.subscription != null;
+                if (!cancelNow) {
+                    this.subscription = subscription;
+                }
+            }
+            if (cancelNow) {
+                subscription.cancel();
+                return;
+            }
+            subscription.request(PUBLISHER_PREFETCH);
+        }
+
+        @Override
+        public void onNext(Object item) {
+            if (!signals.offer(item)) {
+                onError(new IllegalStateException("Publisher sent more elements than were requested"));
+            }
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            signals.offer(new Failure(error));
+        }
+
+        @Override
+        public void onComplete() {
+            signals.offer(COMPLETE);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            if (done) {
+                return false;
+            }
+            Object signal = signals.poll();
+            try {
+                long waited = 0;
+                while (signal == null) {
+                    if (waited >= PUBLISHER_TIMEOUT_MILLIS) {
+                        throw new IllegalStateException("Publisher signalled nothing for " + PUBLISHER_TIMEOUT_MILLIS + "ms");
+                    }
+                    // Also how a disconnected client is noticed while the publisher is quiet
+                    beforeWait.flush();
+                    signal = signals.poll(PUBLISHER_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+                    waited += PUBLISHER_CHECK_MILLIS;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for the publisher", e);
+            }
+            if (signal == COMPLETE) {
+                done = true;
+                return false;
+            }
+            if (signal instanceof Failure failure) {
+                done = true;
+                throw new IllegalStateException("Publisher failed: " + failure.error().getMessage(), failure.error());
+            }
+            next = signal;
+            if (++consumed == PUBLISHER_PREFETCH / 2) {
+                consumed = 0;
+                subscription().request(PUBLISHER_PREFETCH / 2);
+            }
+            return true;
+        }
+
+        @Override
+        public Object next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Object element = next;
+            next = null;
+            return element;
+        }
+
+        @Override
+        public void close() {
+            Flow.Subscription current;
+            synchronized (this) {
+                cancelled = true;
+                current = subscription;
+            }
+            if (current != null && !done) {
+                current.cancel();
+            }
+        }
+
+        private synchronized Flow.Subscription subscription() {
+            return subscription;
+        }
+    }
+}
@@ -0,0 +1,373 @@
+package imd.ufrn.br.remoting;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectReader;
+import imd.ufrn.br.exceptions.MarshallingException;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.DoubleConsumer;
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+import java.util.stream.DoubleStream;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A parameter declared as an {@link IntStream}, {@link LongStream}, {@link DoubleStream},
+ * {@link Stream}, {@link Iterator} or {@link Flow.Publisher}, bound to the last parameter of the
+ * request body. Instead of converting the whole JSON array up front, the binder hands the method a
+ * view that parses one element each time the method asks for one, straight from the request body,
+ * so a bulk-ingest route holds a single element at a time no matter how large the payload is.
+ * <p>
+ * The view can be consumed once. Reaching its end checks that the body ends there too and releases
+ * the parser; a malformed element or body fails the consuming call with a MarshallingException.
+ */
+final class StreamingParameter {
+
+    private enum Kind { INT_STREAM, LONG_STREAM, DOUBLE_STREAM, STREAM, ITERATOR, PUBLISHER }
+
+    private final Kind kind;
+    private final ObjectReader elementReader;
+
+    private StreamingParameter(Kind kind, ObjectReader elementReader) {
+        this.kind = kind;
+        this.elementReader = elementReader;
+    }
+
+    static boolean isStreaming(Class<?> parameterType) {
+        return kindOf(parameterType) != null;
+    }
+
+    static boolean isPrimitive(Class<?> parameterType) {
+        Kind kind = kindOf(parameterType);
+        return kind == Kind.INT_STREAM || kind == Kind.LONG_STREAM || kind == Kind.DOUBLE_STREAM;
+    }
+
+    /**
+     * @param elementReader reads one element; unused for primitive streams
+     */
+    static StreamingParameter of(Class<?> parameterType, ObjectReader elementReader) {
+        return new StreamingParameter(kindOf(parameterType), elementReader);
+    }
+
+    private static Kind kindOf(Class<?> parameterType) {
+        if (parameterType == IntStream.class) {
+            return Kind.INT_STREAM;
+        } else if (parameterType == LongStream.class) {
+            return Kind.LONG_STREAM;
+        } else if (parameterType == DoubleStream.class) {
+            return Kind.DOUBLE_STREAM;
+        } else if (parameterType == Stream.class) {
+            return Kind.STREAM;
+        } else if (parameterType == Iterator.class) {
+            return Kind.ITERATOR;
+        } else if (parameterType == Flow.Publisher.class) {
+            return Kind.PUBLISHER;
+        }
+        return null;
+    }
+
+    /**
+     * Builds the lazy view over the array starting at the parser's current START_ARRAY token. The
+     * view takes over the parser and closes it once consumed.
+     */
+    Object open(JsonParser parser) {
+        Cursor cursor = new Cursor(parser);
+        return switch (kind) {
+            case INT_STREAM -> StreamSupport.intStream(new Spliterators.AbstractIntSpliterator(Long.MAX_VALUE, Spliterator.ORDERED) {
+                @Override
+                public boolean tryAdvance(IntConsumer action) {
+                    if (!cursor.advance()) {
+                        return false;
+                    }
+                    action.accept(cursor.intValue());
+                    return true;
+                }
+            }, false).onClose(cursor::close);
+            case LONG_STREAM -> StreamSupport.longStream(new Spliterators.AbstractLongSpliterator(Long.MAX_VALUE, Spliterator.ORDERED) {
+                @Override
+                public boolean tryAdvance(LongConsumer action) {
+                    if (!cursor.advance()) {
+                        return false;
+                    }
+                    action.accept(cursor.longValue());
+                    return true;
+                }
+            }, false).onClose(cursor::close);
+            case DOUBLE_STREAM -> StreamSupport.doubleStream(new Spliterators.AbstractDoubleSpliterator(Long.MAX_VALUE, Spliterator.ORDERED) {
+                @Override
+                public boolean tryAdvance(DoubleConsumer action) {
+                    if (!cursor.advance()) {
+                        return false;
+                    }
+                    action.accept(cursor.doubleValue());
+                    return true;
+                }
+            }, false).onClose(cursor::close);
+            case STREAM -> StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED), false)
+                    .onClose(cursor::close);
+            case ITERATOR -> cursor;
+            case PUBLISHER -> new CursorPublisher(cursor);
+        };
+    }
+
+    /**
+     * Reads the elements of one JSON array, one token at a time.
+     */
+    private final class Cursor implements Iterator<Object>, AutoCloseable {
+
+        private final JsonParser parser;
+        private boolean advanced;
+        private boolean finished;
+
+        Cursor(JsonParser parser) {
+            this.parser = parser;
+        }
+
+        /**
+         * Moves to the next element, or returns false at the end of the array.
+         */
+        boolean advance() {
+            if (advanced) {
+                return true;
+            }
+            if (finished) {
+                return false;
+            }
+            try {
+                JsonToken token = parser.nextToken();
+                if (token == JsonToken.END_ARRAY) {
+                    // The streamed parameter is the last one, so the parameters array ends here too
+                    JsonToken outer = parser.nextToken();
+                    close();
+                    if (outer != JsonToken.END_ARRAY) {
+                        throw new MarshallingException("Parameter count mismatch. The streamed parameter must be the last one.", null);
+                    }
+                    return false;
+                }
+                if (token == null) {
+                    close();
+                    throw new MarshallingException("Unexpected end of streamed parameter JSON.", null);
+                }
+                advanced = true;
+                return true;
+            } catch (IOException e) {
+                close();
+                throw new MarshallingException("Error reading streamed parameter. " + e.getMessage(), e);
+            }
+        }
+
+        int intValue() {
+            advanced = false;
+            try {
+                return parser.getIntValue();
+            } catch (IOException e) {
+                close();
+                throw new MarshallingException("Error reading streamed int element. " + e.getMessage(), e);
+            }
+        }
+
+        long longValue() {
+            advanced = false;
+            try {
+                return parser.getLongValue();
+            } catch (IOException e) {
+                close();
+                throw new MarshallingException("Error reading streamed long element. " + e.getMessage(), e);
+            }
+        }
+
+        double doubleValue() {
+            advanced = false;
+            try {
+                return parser.getDoubleValue();
+            } catch (IOException e) {
+                close();
+                throw new MarshallingException("Error reading streamed double element. " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return advance();
+        }
+
+        @Override
+        public Object next() {
+            if (!advance()) {
+                throw new NoSuchElementException();
+            }
+            advanced = false;
+            if (parser.currentToken() == JsonToken.VALUE_NULL) {
+                return null;
+            }
+            try {
+                return elementReader.readValue(parser);
+            } catch (IOException e) {
+                close();
+                throw new MarshallingException("Error converting streamed element. " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            advanced = false;
+            try {
+                parser.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Single-subscriber publisher over a cursor. Elements are parsed on the thread that requests them,
+     * as many as it has asked for.
+     */
+    private static final class CursorPublisher implements Flow.Publisher<Object> {
+
+        private final Cursor cursor;
+        private final AtomicBoolean subscribed = new AtomicBoolean();
+
+        CursorPublisher(Cursor cursor) {
+            this.cursor = cursor;
+        }
+
+        @Override
+        public void subscribe(Flow.Subscriber<? super Object> subscriber) {
+            if (!subscribed.compareAndSet(false, true)) {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {
+                    }
+
+                    @Override
+                    public void cancel() {
+                    }
+                });
+                subscriber.onError(new IllegalStateException("A streamed parameter can only be subscribed to once."));
+                return;
+            }
+            subscriber.onSubscribe(new CursorSubscription(cursor, subscriber));
+        }
+    }
+
+    private static final class CursorSubscription implements Flow.Subscription {
+
+        private final Cursor cursor;
+        private final Flow.Subscriber<? super Object> subscriber;
+        private long demand;
+        private boolean draining;
+        private boolean done;
+        private Throwable pendingError;
+
+        CursorSubscription(Cursor cursor, Flow.Subscriber<? super Object> subscriber) {
+            this.cursor = cursor;
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(long n) {
+            IllegalArgumentException violation = null;
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                if (n <= 0) {
+                    done = true;
+                    violation = new IllegalArgumentException("Subscription request must be positive, was " + n);
+                    if (draining) {
+                        // The draining thread may be inside onNext; it signals the error once that returns
+                        pendingError = violation;
+                        return;
+                    }
+                } else {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                    if (draining) {
+                        // The subscriber asked for more from within onNext; the running drain picks it up
+                        return;
+                    }
+                    draining = true;
+                }
+            }
+            if (violation != null) {
+                cursor.close();
+                subscriber.onError(violation);
+                return;
+            }
+            drain();
+        }
+
+        private void drain() {
+            while (true) {
+                boolean stopped;
+                Throwable error = null;
+                synchronized (this) {
+                    stopped = done;
+                    if (done) {
+                        // Cancelled, or sent an invalid request, while this thread was parsing; the
+                        // parser is only touched here
+                        draining = false;
+                        cursor.close();
+                        error = pendingError;
+                        pendingError = null;
+                    } else if (demand == 0) {
+                        draining = false;
+                        return;
+                    } else {
+                        demand--;
+                    }
+                }
+                if (stopped) {
+                    if (error != null) {
+                        subscriber.onError(error);
+                    }
+                    return;
+                }
+                Object element;
+                try {
+                    if (!cursor.hasNext()) {
+                        finish();
+                        subscriber.onComplete();
+                        return;
+                    }
+                    element = cursor.next();
+                } catch (RuntimeException e) {
+                    finish();
+                    subscriber.onError(e);
+                    return;
+                }
+                subscriber.onNext(element);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            boolean idle;
+            synchronized (this) {
+                done = true;
+                idle = !draining;
+            }
+            if (idle) {
+                cursor.close();
+            }
+        }
+
+        private synchronized void finish() {
+            done = true;
+            draining = false;
+        }
+    }
+}